@@ -0,0 +1,38 @@
+// **********************************************************************************
+// Title: BackgroundExecutor
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: BackgroundExecutor.java
+// Description: The one thread pool that runs the application's background work, such
+//              as searches, similarity scoring and shelf layout
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+public class BackgroundExecutor {
+    // A fork-join pool, so tasks running on it can split their work without blocking a thread
+    private static final ForkJoinPool pool = new ForkJoinPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), // a long task never blocks the rest
+            p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("background-" + thread.getPoolIndex());
+                thread.setDaemon(true); // background work does not keep the application running
+                return thread;
+            }, null, true); // first in, first out, since most tasks are never joined
+
+    private BackgroundExecutor() {
+    }
+
+    /** Returns the pool that runs background work */
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /** Runs a task in the background */
+    public static void execute(Runnable task) {
+        pool.execute(task);
+    }
+}
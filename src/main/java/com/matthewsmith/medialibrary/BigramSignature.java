@@ -0,0 +1,100 @@
+// **********************************************************************************
+// Title: BigramSignature
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: BigramSignature.java
+// Description: Stores the set of bigrams of a string so that strings can be compared
+//              repeatedly without rebuilding their bigram sets
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+import java.util.Arrays;
+
+public final class BigramSignature {
+    private final String text; // lowercase copy of the string
+    private final int[] bigrams; // sorted set of bigrams, each packed into one int
+
+    /** Creates the bigram signature of a string */
+    public BigramSignature(String s) {
+        this.text = s.toLowerCase();
+        this.bigrams = createBigrams(text);
+    }
+
+    /** Returns the lowercase string this signature was created from */
+    public String getText() {
+        return text;
+    }
+
+    /** Returns the number of distinct bigrams in the string */
+    public int getSize() {
+        return bigrams.length;
+    }
+
+    /** Returns the bigram at a specified index; bigrams are sorted in ascending order */
+    public int getBigram(int index) {
+        return bigrams[index];
+    }
+
+    /** Finds the Jaccard similarity coefficient of the bigram sets of two strings */
+    public double compare(BigramSignature other) {
+        String s1 = text;
+        String s2 = other.text;
+
+        if (s1.isBlank() || s2.isBlank()) {
+            return 0;
+        } else if (s1.length() == 1 && s2.length() == 1) {
+            return s1.equals(s2) ? 1 : 0;
+        } else if (s1.length() == 1 || s2.length() == 1) {
+            return s1.charAt(0) == s2.charAt(0) ? 1 : 0;
+        }
+
+        // Count the bigrams in both sets by merging the two sorted arrays
+        int[] a = bigrams;
+        int[] b = other.bigrams;
+        int i = 0;
+        int j = 0;
+        int intersectionSize = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                intersectionSize++;
+                i++;
+                j++;
+            }
+        }
+
+        // return |intersection(a,b)| / |union(a,b)|
+        return 1.0 * intersectionSize / (a.length + b.length - intersectionSize);
+    }
+
+    /** Returns the sorted, distinct bigrams of a string (for example, ab, bc, cd) */
+    private static int[] createBigrams(String s) {
+        if (s.length() < 2) {
+            return new int[0];
+        }
+
+        // Each bigram stores its first character in the upper 16 bits and its second
+        // character in the lower 16 bits
+        int[] bigrams = new int[s.length() - 1];
+        for (int i = 0; i < bigrams.length; i++) {
+            bigrams[i] = (s.charAt(i) << 16) | s.charAt(i + 1);
+        }
+
+        Arrays.sort(bigrams);
+
+        // Remove duplicate bigrams
+        int size = 1;
+        for (int i = 1; i < bigrams.length; i++) {
+            if (bigrams[i] != bigrams[size - 1]) {
+                bigrams[size++] = bigrams[i];
+            }
+        }
+
+        return Arrays.copyOf(bigrams, size);
+    }
+}
@@ -11,7 +11,9 @@ package com.matthewsmith.medialibrary;
 import java.io.Serializable;
 
 public class Book extends Media implements Serializable {
+    private static final long serialVersionUID = 6543546091680241129L;
     private String author;
+    private transient BigramSignature authorSignature; // created when first needed
 
     public Book(String name) {
         super(name);
@@ -30,13 +32,33 @@ public class Book extends Media implements Serializable {
 
     public void setAuthor(String author) {
         this.author = author;
+        this.authorSignature = null;
+    }
+
+    /** Returns the bigram signature of the author */
+    protected BigramSignature getAuthorSignature() {
+        if (authorSignature == null) {
+            authorSignature = new BigramSignature(author);
+        }
+        return authorSignature;
+    }
+
+    /** Returns the type of this media */
+    @Override
+    public MediaType getType() {
+        return MediaType.BOOK;
+    }
+
+    @Override
+    protected BigramSignature getCreatorSignature() {
+        return getAuthorSignature();
     }
 
     @Override
     public double getSimilarity(Media m) {
         double initialValue = super.getSimilarity(m) * 0.85; // initial score values are worth 85%
-        double authorValue = compareStrings(author.toLowerCase(),
-                ((Book) m).getAuthor().toLowerCase()) * 0.15; // author is worth 15%
+        double authorValue = getAuthorSignature().compare(
+                ((Book) m).getAuthorSignature()) * 0.15; // author is worth 15%
 
         return initialValue + authorValue;
     }
@@ -8,6 +8,7 @@
 
 package com.matthewsmith.medialibrary;
 
+import javafx.concurrent.Task;
 import javafx.geometry.Point2D;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.Pane;
@@ -20,25 +21,22 @@ import javafx.scene.text.TextAlignment;
 import javafx.util.Duration;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class BubbleDiagramPane extends Pane {
     private final double RADIUS = 150; // radius of middle circle
     private final double CENTER_X = 400; // center X of middle circle
     private final double CENTER_Y = 400; // center Y of middle circle
-    private final Library<Media> library;
-    private WeightedGraph<Media> graph;
+    private static final int BATCH_SIZE = 500; // media scored between provisional results
+    private final SimilarityIndex index;
+    private final Pane bubbles = new Pane(); // circles of the similar media
     private Media root;
-    private final String type;
+    private Task<List<SimilarityIndex.Neighbor>> task; // finds the media similar to the root
 
-    /** Creates a bubble diagram pane from a library and root media */
-    public BubbleDiagramPane(Library<Media> library, Media root) {
-        this.library = library;
+    /** Creates a bubble diagram pane from a similarity index and root media */
+    public BubbleDiagramPane(SimilarityIndex index, Media root) {
+        this.index = index;
         this.root = root;
-        this.type = root.getClass().getSimpleName();
-        graph = new WeightedGraph<>();
-        createGraph();
         draw();
     }
 
@@ -48,51 +46,82 @@ public class BubbleDiagramPane extends Pane {
         draw();
     }
 
-    /** Creates a complete graph of all media of a certain type in library */
-    private void createGraph() {
-        ArrayList<Media> media = library.getMedia();
-
-        // Add a vertex for each media
-        for (Media m : media) {
-            if (m.getClass().getSimpleName().equals(type)) {
-                graph.addVertex(m);
-            }
+    /** Stops finding similar media; called when the pane is no longer shown */
+    public void cancel() {
+        if (task != null) {
+            task.cancel();
+            task = null;
         }
+    }
 
-        // Add edges between all media with weight of 1 - similarity score
-        for (int i = 0; i < media.size(); i++) {
-            Media m1 = media.get(i);
-            int index1 = graph.getIndex(m1);
+    /** Draws the root media, then draws the media similar to it as they are found */
+    private void draw() {
+        cancel();
+        this.getChildren().clear();
+        bubbles.getChildren().clear();
+        drawTitle(root);
+        drawRoot();
+        this.getChildren().add(bubbles);
+
+        Media m = root;
+        int k = index.getK();
+        Task<List<SimilarityIndex.Neighbor>> newTask = new Task<>() {
+            @Override
+            protected List<SimilarityIndex.Neighbor> call() {
+                List<SimilarityIndex.Neighbor> cached = index.getCachedNeighbors(m);
+                if (cached != null) {
+                    return cached;
+                }
 
-            if (!m1.getClass().getSimpleName().equals(type)) {
-                continue;
-            }
+                // Score the candidates, publishing the best so far after each batch that changed them
+                List<Media> candidates = index.getCandidates(m);
+                ArrayList<SimilarityIndex.Neighbor> row = new ArrayList<>(k + 1);
+                for (int start = 0; start < candidates.size(); start += BATCH_SIZE) {
+                    if (isCancelled()) {
+                        return null;
+                    }
 
-            for (int j = 0; j < media.size(); j++) {
-                Media m2 = media.get(j);
-                int index2 = graph.getIndex(m2);
+                    List<Media> batch = candidates.subList(start, Math.min(start + BATCH_SIZE, candidates.size()));
+                    double[] scores = SimilarityIndex.score(m, batch);
+                    boolean changed = false;
+                    for (int i = 0; i < scores.length; i++) {
+                        if (!SimilarityIndex.isSame(m, batch.get(i))) {
+                            changed |= SimilarityIndex.offer(row, k, batch.get(i), scores[i]);
+                        }
+                    }
 
-                if (!m2.getClass().getSimpleName().equals(type)) {
-                    continue;
+                    if (changed) {
+                        updateValue(new ArrayList<>(row));
+                    }
                 }
 
-                // If m1 and m2 are not the same, add an edge
-                if (!m1.equals(m2)) {
-                    double weight = 1 - m1.getSimilarity(m2);
-                    graph.addEdge(index1, index2, weight);
-                    graph.addEdge(index2, index1, weight);
+                if (isCancelled()) {
+                    return null;
                 }
+
+                // Find the neighbors of every media of this type, so the next diagram and the
+                // similarity graph are read from the index; closing the window stops this too
+                index.prepare(m.getClass(), this::isCancelled);
+                return isCancelled() ? null : row;
             }
-        }
+        };
+
+        // Runs on the JavaFX thread for each provisional result and the final result
+        newTask.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (newTask == task && newValue != null) {
+                bubbles.getChildren().clear();
+                drawCircles(getSimilarMedia(newValue));
+            }
+        });
+
+        task = newTask;
+        BackgroundExecutor.execute(newTask);
     }
 
-    /** Draws a bubble diagram of media similar to the root media */
-    private void draw() {
-        this.getChildren().clear();
-        drawTitle(root);
+    /** Draws the root media in the middle of the pane */
+    private void drawRoot() {
         final double width = 800;
         final double height = 800;
-        Media[] similar = getSimilarMedia(root);
 
         // Root circle
         Circle rootCircle = new Circle(width / 2, height / 2, RADIUS, root.getColor());
@@ -121,37 +150,30 @@ public class BubbleDiagramPane extends Pane {
         circleAndText.setLayoutX(width / 2 - RADIUS);
         circleAndText.setLayoutY(height / 2 - RADIUS);
         this.getChildren().add(circleAndText);
-
-        try {
-            drawCircles(similar);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
     }
 
     /** Draws the surrounding circles */
-    private void drawCircles(Media[] media) throws Exception {
-        if (media[0] == null) return;
+    private void drawCircles(List<SimilarityIndex.Neighbor> media) {
+        if (media.isEmpty()) return;
 
         final double perimeter = 2 * Math.PI * RADIUS; // Perimeter of center circle
         final double maxRadius = 125; // Radius with a similarity score of 1.0
-        final int rootIndex = graph.getIndex(root);
 
         double totalWeight = 0; // Total weight of results; if too high, fewer results will be displayed
         double percent = 0; // Cumulative percentage of center circle used
         double angle;
-        double similarityValue = 1 - graph.getWeight(rootIndex, graph.getIndex(media[0]));
+        double similarityValue = media.get(0).getSimilarity();
         double newRadius = Math.max(similarityValue, 0.3) * maxRadius;
         double x = 400;
         double y = 250 - newRadius;
 
-        drawACircle(x, y, newRadius, media[0], similarityValue);
+        drawACircle(x, y, newRadius, media.get(0).getMedia(), similarityValue);
         double lastSimilarity = similarityValue;
         totalWeight += similarityValue;
 
-        for (int i = 1; i < media.length; i++) {
-            if (media[i] == null || totalWeight > 5.6) return;
-            similarityValue = 1 - graph.getWeight(rootIndex, graph.getIndex(media[i]));
+        for (int i = 1; i < media.size(); i++) {
+            if (totalWeight > 5.6) return;
+            similarityValue = media.get(i).getSimilarity();
             newRadius = Math.max(similarityValue, 0.3) * maxRadius;
 
             // Convert similarity value of previous circle to a percentage of circle perimeter used
@@ -180,7 +202,7 @@ public class BubbleDiagramPane extends Pane {
             y = perimeterY + ((Math.max(similarityValue, 0.30) / (RADIUS / maxRadius)) * (perimeterY - CENTER_Y));
 
             // Draw the circle
-            drawACircle(x, y, newRadius, media[i], similarityValue);
+            drawACircle(x, y, newRadius, media.get(i).getMedia(), similarityValue);
             lastSimilarity = similarityValue;
             totalWeight += similarityValue;
         }
@@ -243,7 +265,7 @@ public class BubbleDiagramPane extends Pane {
         circleAndText.setLayoutY(y - radius);
         circleAndText.getChildren().addAll(circle, text);
 
-        this.getChildren().add(circleAndText);
+        bubbles.getChildren().add(circleAndText);
     }
 
     private void drawTitle(Media m) {
@@ -257,55 +279,14 @@ public class BubbleDiagramPane extends Pane {
         this.getChildren().addAll(header, titleText);
     }
 
-    /** Finds the 10 media most similar to a specified media */
-    private Media[] getSimilarMedia(Media m) {
-        final int numMedia = 10;
-        Media[] similarMedia = new Media[numMedia];
-        Arrays.fill(similarMedia, null);
-        Double[] weights = new Double[numMedia];
-
-        // Initialize array with max distance value 1
-        Arrays.fill(weights, 1.0);
-
-        int index1 = graph.getIndex(m);
-        List<Integer> neighbors = graph.getNeighbors(index1);
-
-        for (int index2 : neighbors) {
-            Media m2 = graph.getVertex(index2);
-            try {
-                double weight = graph.getWeight(index1, index2);
-
-                // if weight is less than the highest distance in the similarMedia array,
-                // add it to the similarMedia array
-                if (weight < weights[weights.length - 1]) {
-                    // get index
-                    int index = 0;
-                    for (int i = 0; i < weights.length; i++) {
-                        if (weight < weights[i]) {
-                            index = i;
-                            break;
-                        }
-                    }
-                    insertElement(similarMedia, m2, index); // insert into array
-                    insertElement(weights, weight, index);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    /** Leaves out the neighbors with no similarity; neighbors are sorted, most similar first */
+    private static List<SimilarityIndex.Neighbor> getSimilarMedia(List<SimilarityIndex.Neighbor> neighbors) {
+        int size = 0;
+        while (size < neighbors.size() && neighbors.get(size).getSimilarity() > 0) {
+            size++;
         }
 
-        return similarMedia;
-    }
-
-    /** Inserts an item into an array at a specified index */
-    private static <E> void insertElement(E[] arr, E obj, int index) {
-        E previousItem = obj;
-
-        for (int i = index; i < arr.length; i++) {
-            E temp = previousItem;
-            previousItem = arr[i];
-            arr[i] = temp;
-        }
+        return neighbors.subList(0, size);
     }
 
     /** Shortens a string to a certain number of characters */
@@ -44,6 +44,30 @@ public class BucketTree<K, V> {
         return null; // key not in tree
     }
 
+    /** Returns the values of all keys between low and high, inclusive, in key order */
+    public ArrayList<V> getRange(K low, K high) {
+        ArrayList<V> list = new ArrayList<>();
+        getRange(root, low, high, list);
+        return list;
+    }
+
+    /** Recursive in-order helper for getRange; skips subtrees that lie outside the range */
+    private void getRange(BucketTreeNode<K, V> node, K low, K high, ArrayList<V> list) {
+        if (node == null) {
+            return;
+        }
+
+        if (c.compare(low, node.key) < 0) {
+            getRange(node.left, low, high, list); // smaller keys may still be in range
+        }
+        if (c.compare(low, node.key) <= 0 && c.compare(node.key, high) <= 0) {
+            list.addAll(node.value);
+        }
+        if (c.compare(node.key, high) < 0) {
+            getRange(node.right, low, high, list); // larger keys may still be in range
+        }
+    }
+
     /** Inserts an element into the tree and rebalances if necessary */
     public boolean add(K k, V v) {
         if (root == null) { // tree is empty
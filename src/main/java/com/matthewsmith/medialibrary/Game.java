@@ -11,9 +11,12 @@ package com.matthewsmith.medialibrary;
 import java.io.Serializable;
 
 public class Game extends Media implements Serializable {
+    private static final long serialVersionUID = 4682989003699031359L;
     private String developer;
     private String console;
     private int numPlayers;
+    private transient BigramSignature developerSignature; // created when first needed
+    private transient BigramSignature consoleSignature; // created when first needed
 
     public Game(String name) {
         super(name);
@@ -44,23 +47,53 @@ public class Game extends Media implements Serializable {
 
     public void setDeveloper(String developer) {
         this.developer = developer;
+        this.developerSignature = null;
     }
 
     public void setConsole(String console) {
         this.console = console;
+        this.consoleSignature = null;
     }
 
     public void setNumPlayers(int numPlayers) {
         this.numPlayers = numPlayers;
     }
 
+    /** Returns the bigram signature of the developer */
+    protected BigramSignature getDeveloperSignature() {
+        if (developerSignature == null) {
+            developerSignature = new BigramSignature(developer);
+        }
+        return developerSignature;
+    }
+
+    /** Returns the bigram signature of the console */
+    protected BigramSignature getConsoleSignature() {
+        if (consoleSignature == null) {
+            consoleSignature = new BigramSignature(console);
+        }
+        return consoleSignature;
+    }
+
+    /** Returns the bigram signature of the developer, who creates a game */
+    @Override
+    protected BigramSignature getCreatorSignature() {
+        return getDeveloperSignature();
+    }
+
+    /** Returns the type of this media */
+    @Override
+    public MediaType getType() {
+        return MediaType.GAME;
+    }
+
     @Override
     public double getSimilarity(Media m) {
         double initialValue = super.getSimilarity(m) * 0.7; // initial score values are worth 70%
-        double developerValue = compareStrings(developer.toLowerCase(),
-                ((Game) m).getDeveloper().toLowerCase()) * 0.15; // developer is worth 15%
-        double consoleValue = compareStrings(console.toLowerCase(),
-                ((Game) m).getConsole().toLowerCase()) * 0.1; // console is worth 10%
+        double developerValue = getDeveloperSignature().compare(
+                ((Game) m).getDeveloperSignature()) * 0.15; // developer is worth 15%
+        double consoleValue = getConsoleSignature().compare(
+                ((Game) m).getConsoleSignature()) * 0.1; // console is worth 10%
 
         // if numPlayers difference is >2, numPlayers value is 0
         int numPlayersDifference = Math.abs(numPlayers - ((Game) m).getNumPlayers());
@@ -0,0 +1,59 @@
+// **********************************************************************************
+// Title: LRUCache
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: LRUCache.java
+// Description: A bounded map that evicts its least recently used entry when full
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LRUCache<K, V> {
+    private final int capacity;
+    private final LinkedHashMap<K, V> map;
+
+    /** Creates a cache that holds at most a specified number of entries */
+    public LRUCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+
+        this.capacity = capacity;
+
+        // access-ordered map, so the eldest entry is always the least recently used
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LRUCache.this.capacity;
+            }
+        };
+    }
+
+    /** Returns the value of a key and marks it as recently used, or null if the key is not cached */
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    /** Adds a value to the cache, evicting the least recently used entry if necessary */
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    /** Removes all entries from the cache */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /** Returns the number of cached entries */
+    public synchronized int getSize() {
+        return map.size();
+    }
+
+    /** Returns the maximum number of cached entries */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -12,11 +12,17 @@ import java.io.*;
 import java.util.*;
 
 public class Library<E> implements Iterable<E> {
+    private static final int SEARCH_CACHE_SIZE = 64; // maximum number of cached search results
     private ArrayList<E> media;
     private Comparator<E> c;
     private HashMap<E, String> groups;
     private BucketTree<String, E> tree;
     private File file;
+    private int modCount = 0; // incremented every time the contents of the library change
+    private final LRUCache<SearchKey, List<E>> searchCache = new LRUCache<>(SEARCH_CACHE_SIZE);
+    private int searchCacheModCount = 0; // value of modCount when the search cache was last valid
+    private final List<Listener<E>> listeners = new ArrayList<>();
+    private final EnumMap<MediaType, ArrayList<E>> typeLists = createTypeLists(); // elements of each media type, in library order
 
     /** Creates an empty library */
     public Library() {
@@ -37,6 +43,7 @@ public class Library<E> implements Iterable<E> {
         this.c = (e1, e2) -> ((Comparable<E>)e1).compareTo(e2);
         this.groups = new HashMap<>();
         this.tree = new BucketTree<>(String::compareToIgnoreCase);
+        rebuildTypeLists();
     }
 
     /** Returns the list of media */
@@ -44,21 +51,112 @@ public class Library<E> implements Iterable<E> {
         return media;
     }
 
+    /** Returns a new list of the elements of a media type, in the order of the library */
+    public synchronized ArrayList<E> getMedia(MediaType type) {
+        return new ArrayList<>(typeLists.get(type));
+    }
+
+    /** Returns the number of elements of a media type */
+    public synchronized int getSize(MediaType type) {
+        return typeLists.get(type).size();
+    }
+
+    /** Returns a new list of the elements whose types are not in a mask of excluded types, in
+     *  the order of the library, by merging the lists of the included types. Elements of
+     *  different types that sort the same are in the order of their types. */
+    public synchronized ArrayList<E> getMedia(int excludedTypes) {
+        int size = 0;
+        int included = 0;
+        for (int t = 0; t < MediaType.getCount(); t++) {
+            MediaType type = MediaType.get(t);
+            if (!type.isIn(excludedTypes)) {
+                size += typeLists.get(type).size();
+                included++;
+            }
+        }
+
+        ArrayList<E> results = new ArrayList<>(size);
+        if (included == 1) {
+            for (int t = 0; t < MediaType.getCount(); t++) {
+                MediaType type = MediaType.get(t);
+                if (!type.isIn(excludedTypes)) {
+                    results.addAll(typeLists.get(type));
+                }
+            }
+            return results;
+        }
+
+        // Repeatedly take the smallest next element of the included lists
+        int[] next = new int[MediaType.getCount()]; // index of the next element of each type
+        while (results.size() < size) {
+            MediaType smallest = null;
+            for (int t = 0; t < MediaType.getCount(); t++) {
+                MediaType type = MediaType.get(t);
+                List<E> typeList = typeLists.get(type);
+                if (type.isIn(excludedTypes) || next[t] == typeList.size()) {
+                    continue;
+                }
+                if (smallest == null || c.compare(typeList.get(next[t]),
+                        typeLists.get(smallest).get(next[smallest.ordinal()])) < 0) {
+                    smallest = type;
+                }
+            }
+            results.add(typeLists.get(smallest).get(next[smallest.ordinal()]++));
+        }
+
+        return results;
+    }
+
+    /** Returns the index of an element in getMedia(excludedTypes), or -1 if it is not in the
+     *  library or its type is excluded */
+    public synchronized int indexOf(E e, int excludedTypes) {
+        MediaType type = getType(e);
+        int index = type.isIn(excludedTypes) ? -1 : indexOfSame(typeLists.get(type), e);
+        if (index < 0) {
+            return -1;
+        }
+
+        // Add the elements of the other included types that come before it
+        for (int t = 0; t < MediaType.getCount(); t++) {
+            MediaType other = MediaType.get(t);
+            if (other != type && !other.isIn(excludedTypes)) {
+                // Elements of earlier types that sort the same come first
+                List<E> typeList = typeLists.get(other);
+                index += other.compareTo(type) < 0 ? upperBound(typeList, e) : lowerBound(typeList, e);
+            }
+        }
+
+        return index;
+    }
+
+    /** Registers a listener to be notified when elements are added or removed */
+    public void addListener(Listener<E> listener) {
+        listeners.add(listener);
+    }
+
+    /** Unregisters a listener */
+    public void removeListener(Listener<E> listener) {
+        listeners.remove(listener);
+    }
+
     /** Sets the file that this library references */
     public void setFile(File file) {
         this.file = file;
     }
 
     /** Adds an element to a specified group */
-    public void addToGroup(E e, String name) {
+    public synchronized void addToGroup(E e, String name) {
         if (name != null && !name.isBlank()) {
             groups.put(e, name);
+            modCount++;
         }
     }
 
     /** Removes an element from a group */
-    public void removeFromGroup(E e) {
-        groups.remove(e);
+    public synchronized void removeFromGroup(E e) {
+        if (groups.remove(e) != null) {
+            modCount++;
+        }
     }
 
     /** Returns the group of an element */
@@ -77,7 +175,8 @@ public class Library<E> implements Iterable<E> {
     }
 
     /** Adds an element to a tree with a specified key */
-    public boolean addToTree(String key, E e) {
+    public synchronized boolean addToTree(String key, E e) {
+        modCount++;
         return tree.add(key, e);
     }
 
@@ -86,13 +185,103 @@ public class Library<E> implements Iterable<E> {
         return tree.get(key);
     }
 
+    /** Returns an unmodifiable list of elements with a name, excluding elements whose types are
+     *  in a mask of media types */
+    public synchronized List<E> search(String name, int excludedTypes) {
+        SearchKey key = new SearchKey(SearchType.NAME, name.toLowerCase(), excludedTypes);
+        List<E> results = getCachedResults(key);
+
+        if (results == null) {
+            ArrayList<E> bucket = tree.get(key.query);
+            results = filter(bucket == null ? new ArrayList<>() : bucket, excludedTypes);
+            searchCache.put(key, results);
+        }
+
+        return results;
+    }
+
+    /** Returns an unmodifiable list of elements whose names start with a prefix, in name order,
+     *  excluding elements whose types are in a mask of media types */
+    public synchronized List<E> prefixSearch(String prefix, int excludedTypes) {
+        SearchKey key = new SearchKey(SearchType.PREFIX, prefix.toLowerCase(), excludedTypes);
+        List<E> results = getCachedResults(key);
+
+        if (results == null) {
+            // every name that starts with the prefix sorts between the prefix and the
+            // prefix followed by the highest possible character
+            results = filter(tree.getRange(key.query, key.query + Character.MAX_VALUE), excludedTypes);
+            searchCache.put(key, results);
+        }
+
+        return results;
+    }
+
+    /** Returns an unmodifiable list of the elements that belong to a group */
+    public synchronized List<E> groupSearch(String name) {
+        SearchKey key = new SearchKey(SearchType.GROUP, name, MediaType.NONE);
+        List<E> results = getCachedResults(key);
+
+        if (results == null) {
+            ArrayList<E> members = new ArrayList<>();
+            for (Map.Entry<E, String> entry : groups.entrySet()) {
+                if (entry.getValue().equals(name)) {
+                    members.add(entry.getKey());
+                }
+            }
+
+            results = Collections.unmodifiableList(members);
+            searchCache.put(key, results);
+        }
+
+        return results;
+    }
+
+    /** Returns the cached results of a search, or null if the search must be recomputed */
+    private List<E> getCachedResults(SearchKey key) {
+        if (searchCacheModCount != modCount) {
+            // library has changed since the cached results were computed
+            searchCache.clear();
+            searchCacheModCount = modCount;
+            return null;
+        }
+
+        return searchCache.get(key);
+    }
+
+    /** Returns an unmodifiable copy of a list without the elements of excluded types */
+    private static <E> List<E> filter(List<E> list, int excludedTypes) {
+        ArrayList<E> results = new ArrayList<>(list.size());
+        for (E e : list) {
+            if (!getType(e).isIn(excludedTypes)) {
+                results.add(e);
+            }
+        }
+
+        return Collections.unmodifiableList(results);
+    }
+
+    /** Returns the media type of an element; elements that are not media have the type OTHER */
+    private static MediaType getType(Object e) {
+        return e instanceof Media ? ((Media) e).getType() : MediaType.OTHER;
+    }
+
+    /** Returns the comparator that orders the library */
+    public Comparator<E> getComparator() {
+        return c;
+    }
+
+    /** Returns the number of modifications made to the library */
+    public synchronized int getModCount() {
+        return modCount;
+    }
+
     /** Returns the size of the library */
     public int getSize() {
         return media.size();
     }
 
     /** Adds an element to the proper position in the library */
-    public void add(String name, E e) {
+    public synchronized void add(String name, E e) {
         int i = getIndex(e);
         if (i < 0) { // element is not in the list
             add(-i - 1, name, e);
@@ -102,17 +291,43 @@ public class Library<E> implements Iterable<E> {
     }
 
     /** Adds an element to a specified index in the library */
-    private void add(int index, String name, E e) {
+    private synchronized void add(int index, String name, E e) {
+        // Elements of the same type that sort before this one, including those that sort the
+        // same but are before the index, come before it in its type list
+        ArrayList<E> typeList = typeLists.get(getType(e));
+        int typeIndex = lowerBound(typeList, e);
+        for (int i = index - 1; i >= 0 && c.compare(media.get(i), e) == 0; i--) {
+            if (getType(media.get(i)) == getType(e)) {
+                typeIndex++;
+            }
+        }
+        typeList.add(typeIndex, e);
+
         this.media.add(index, e);
         this.tree.add(name.toLowerCase(), e);
+        modCount++;
+        for (Listener<E> listener : listeners) {
+            listener.elementAdded(e);
+        }
         write();
     }
 
     /** Removes an element from the library */
-    public void remove(String name, E e) {
-        this.media.remove(e);
+    public synchronized void remove(String name, E e) {
+        int index = this.media.indexOf(e);
+        E removed = index < 0 ? null : this.media.remove(index); // element as stored in the library
+        if (removed != null) {
+            ArrayList<E> typeList = typeLists.get(getType(removed));
+            typeList.remove(indexOfSame(typeList, removed));
+        }
         this.groups.remove(e); // remove item from group, if it is a member of one
         this.tree.remove(name.toLowerCase(), e); // remove item from bucket in tree
+        modCount++;
+        if (removed != null) {
+            for (Listener<E> listener : listeners) {
+                listener.elementRemoved(removed);
+            }
+        }
         write();
     }
 
@@ -135,20 +350,94 @@ public class Library<E> implements Iterable<E> {
         return -low - 1;
     }
 
+    /** Returns the index of an element itself (not an equal one) in a list sorted like the
+     *  library, or -1 if it is not in the list */
+    private int indexOfSame(List<E> list, E e) {
+        for (int i = lowerBound(list, e); i < list.size() && c.compare(list.get(i), e) == 0; i++) {
+            if (list.get(i) == e) {
+                return i;
+            }
+        }
+
+        // Not found in sorted position
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == e) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the number of elements of a sorted list that sort before an element */
+    private int lowerBound(List<E> list, E e) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (c.compare(list.get(mid), e) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Returns the number of elements of a sorted list that sort before or the same as an element */
+    private int upperBound(List<E> list, E e) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (c.compare(list.get(mid), e) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Creates an empty list for each media type */
+    private static <E> EnumMap<MediaType, ArrayList<E>> createTypeLists() {
+        EnumMap<MediaType, ArrayList<E>> lists = new EnumMap<>(MediaType.class);
+        for (int t = 0; t < MediaType.getCount(); t++) {
+            lists.put(MediaType.get(t), new ArrayList<>());
+        }
+        return lists;
+    }
+
+    /** Splits the media list into the list of each type, keeping the order of the library */
+    private void rebuildTypeLists() {
+        for (ArrayList<E> typeList : typeLists.values()) {
+            typeList.clear();
+        }
+        for (E e : media) {
+            typeLists.get(getType(e)).add(e);
+        }
+    }
+
     /** Clears list, groups map, and tree */
-    public void clear(boolean write) {
+    public synchronized void clear(boolean write) {
         media.clear();
+        rebuildTypeLists();
         groups.clear();
         tree.clear();
+        modCount++;
+        for (Listener<E> listener : listeners) {
+            listener.elementsReplaced();
+        }
         if (write) {
             write();
         }
     }
 
     /** Recursive quick sort - O(n log n) time complexity */
-    public void sort(Comparator<E> c) {
+    public synchronized void sort(Comparator<E> c) {
         this.c = c;
         sort(c, 0, media.size() - 1);
+        rebuildTypeLists(); // quick sort is not stable, so the type lists are split again
+        modCount++;
     }
 
     /** Quick sort helper method */
@@ -206,12 +495,17 @@ public class Library<E> implements Iterable<E> {
     }
 
     /** Reads data from a file into the media ArrayList */
-    protected void read(File file) throws IOException, ClassNotFoundException {
+    protected synchronized void read(File file) throws IOException, ClassNotFoundException {
         if (file.length() > 0) {
             FileInputStream in = new FileInputStream(file);
             ObjectInputStream objectIn = new ObjectInputStream(new BufferedInputStream(in));
             media = (ArrayList<E>) objectIn.readObject();
             groups = (HashMap<E, String>) objectIn.readObject();
+            rebuildTypeLists();
+            modCount++;
+            for (Listener<E> listener : listeners) {
+                listener.elementsReplaced();
+            }
         }
     }
 
@@ -238,4 +532,48 @@ public class Library<E> implements Iterable<E> {
     public Iterator<E> iterator() {
         return media.iterator();
     }
+
+    /** Receives notifications when the contents of a library change */
+    public interface Listener<E> {
+        void elementAdded(E e); // called after an element is added
+        void elementRemoved(E e); // called after an element is removed
+        void elementsReplaced(); // called after the library is cleared or read from a file
+    }
+
+    /** Kinds of searches whose results are cached */
+    private enum SearchType {
+        NAME, PREFIX, GROUP
+    }
+
+    /** Key of a cached search: the type of search, its query, and the mask of excluded types */
+    private static class SearchKey {
+        private final SearchType type;
+        private final String query;
+        private final int excludedTypes;
+
+        public SearchKey(SearchType type, String query, int excludedTypes) {
+            this.type = type;
+            this.query = query;
+            this.excludedTypes = excludedTypes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SearchKey key = (SearchKey) o;
+            return type == key.type &&
+                    query.equals(key.query) &&
+                    excludedTypes == key.excludedTypes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, query, excludedTypes);
+        }
+    }
 }
@@ -8,11 +8,18 @@
 
 package com.matthewsmith.medialibrary;
 
-import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.concurrent.Task;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.*;
@@ -24,21 +31,67 @@ import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 
 import java.time.Year;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Callable;
 import java.util.concurrent.RecursiveAction;
 
 public class LibraryView extends Pane {
     private final Library<Media> library;
+    private final SimilarityIndex similarityIndex; // most similar media of each entry, for showSimilarMedia
+    private static final double COLLECTION_SIMILARITY = 0.75; // media in a collection are joined by neighbors this similar
     private final Stack<Command> history; // History of user actions, for undo function
     private final Stack<Command> undoHistory; // History of undone actions, for redo function
-    private final ArrayList<String> excludeList = new ArrayList<>(); // list of excluded classes when drawing
+    private int excludedTypes = MediaType.NONE; // mask of the media types excluded when drawing
+    private static final double FIRST_ENTRY_X = 60; // x position of the first entry
+    private static final double ENTRY_SPACING = 80; // distance between the left edges of entries
+    private static final double ENTRY_WIDTH = 65; // width of an entry's rectangle
+    public static final double MIN_ZOOM = 1.0 / 64; // zoomed out far enough to show about 20,000 entries at once
+    private static final double NAME_ZOOM = 0.5; // entries show their names at this zoom and closer
+    private static final double MIN_SPINE_SPACING = 4; // entries closer than this many pixels are drawn as color bands
+    private static final int COLOR_BLOCK_SIZE = 64; // entries summarized by each color band
+    private double zoom = 1; // horizontal scale of the shelf; entries are drawn as nodes only at 1
+    private final ReadOnlyDoubleWrapper zoomLevel = new ReadOnlyDoubleWrapper(1); // zoom, for controls to follow
+    private Color[] blockColors = new Color[0]; // average color of each block of entries, or null if not found yet
+    private static final int BUFFER_ENTRIES = 5; // entries drawn on each side of the viewport
+    private List<Media> entries = new ArrayList<>(); // entries on the shelf
+    private final HashMap<Integer, Spine> visibleSpines = new HashMap<>(); // spine of each drawn entry index
+    private final ArrayDeque<Spine> spareSpines = new ArrayDeque<>(); // hidden spines ready for reuse
+    private final Rectangle shelfBar = new Rectangle(0, 397, 0, 15);
+    private ScrollPane viewport; // scroll pane showing this view, or null to draw every entry
+    private boolean showShelfBar = true; // false when an empty group or path is shown
+    private static final double SHELF_HEIGHT = 412; // height of the entries and shelf bar
+    private static final Font ENTRY_FONT = Font.font("Manrope", FontWeight.BOLD, 18); // font of entry names
+    private final Text measuringText = new Text(); // finds where entry names are drawn in ENTRY_FONT
+    private final Canvas shelfCanvas = new Canvas(); // paints the shelf in canvas mode
+    private final Tooltip entryTooltip = new Tooltip(); // full name of the entry under the mouse, shared by every entry
+    private final ContextMenu entryMenu = new ContextMenu(); // context menu shared by every entry
+    private final ArrayList<Node> committedNodes = new ArrayList<>(); // children of the view, reused by each commit
+    private double nameCenterY = Double.NaN; // y position of the middle of entry names, found when first needed
+    private boolean canvasMode = false; // true if the shelf is painted on shelfCanvas
+    private int hoveredIndex = -1; // index of the entry under the mouse in canvas mode
+    private Media menuMedia; // entry the context menu was opened on
+    private final MenuItem pathEndItem = new MenuItem("Find Path to Here"); // enabled if a path can end at menuMedia
+    private static final int LAYOUT_CHUNK_SIZE = 256; // names measured by each background layout task
+    private ShelfLayout layout = new ShelfLayout(0); // short names of the entries on the shelf
+    private int entriesVersion = 0; // incremented every time the entries on the shelf change
+    private boolean showingLibrary = false; // true if the shelf shows the (filtered) library, not a search or group
+    private Task<ShelfLayout> layoutTask; // measures every name of the shelf, or null if none is running
+    private Task<List<Media>> findTask; // finds the entries of a collection or path, or null if none is running
+    private Media pathStart; // first media of the next path, or null if none has been chosen
+    private boolean spinesChanged = false; // true if spines were bound or released since the last commit
     private String name;
 
     /** Creates an empty LibraryView */
@@ -49,9 +102,18 @@ public class LibraryView extends Pane {
     /** Creates a LibraryView from a library */
     public LibraryView(Library<Media> library) {
         this.library = library;
+        this.similarityIndex = new SimilarityIndex(library);
+        library.addListener(new ShelfUpdater());
         this.history = new Stack<>();
         this.undoHistory = new Stack<>();
         this.name = "My Media Library";
+
+        shelfBar.setFill(Color.WHITE);
+        measuringText.setFont(ENTRY_FONT);
+        shelfCanvas.setVisible(false);
+        createEntryMenu();
+        createCanvasHandlers();
+        this.getChildren().addAll(shelfBar, shelfCanvas); // spines are added by commitSpines
     }
 
     /** Sets the name of this library */
@@ -69,7 +131,7 @@ public class LibraryView extends Pane {
         pushAction(new Add(library, (Media) m.clone()));
         library.add(m.getName(), m); // Add to library
         library.write();
-        draw();
+        update();
     }
 
     /** Removes an element from the library */
@@ -78,7 +140,7 @@ public class LibraryView extends Pane {
         library.remove(m.getName(), m); // Remove from library
         MediaLibrary.setSize(library.getSize());
         library.write();
-        draw();
+        update();
     }
 
     /** Undoes previous action */
@@ -88,7 +150,7 @@ public class LibraryView extends Pane {
             command.unExecute();
             pushUndoneAction(command);
             library.write();
-            draw();
+            update();
         }
     }
 
@@ -99,7 +161,7 @@ public class LibraryView extends Pane {
             command.execute();
             history.push(command);
             library.write();
-            draw();
+            update();
         }
     }
 
@@ -109,23 +171,23 @@ public class LibraryView extends Pane {
         undoHistory.clear();
     }
 
-    /** Add a filter to the exclude list */
-    public void addFilter(String className) {
-        if (!excludeList.contains(className)) {
-            this.excludeList.add(className);
+    /** Add a filter that excludes a media type */
+    public void addFilter(MediaType type) {
+        if (!type.isIn(excludedTypes)) {
+            this.excludedTypes |= type.getMask();
             draw();
         }
     }
 
-    /** Remove a filter from the exclude list */
-    public void removeFilter(String className) {
-        this.excludeList.remove(className);
+    /** Remove the filter of a media type */
+    public void removeFilter(MediaType type) {
+        this.excludedTypes &= ~type.getMask();
         draw();
     }
 
-    /** Reset exclude list to exclude no types */
+    /** Reset filters to exclude no types */
     public void resetFilters() {
-        this.excludeList.clear();
+        this.excludedTypes = MediaType.NONE;
         draw();
     }
 
@@ -142,170 +204,848 @@ public class LibraryView extends Pane {
 
     /** Draws the library */
     public void draw() {
-        if (!excludeList.isEmpty()) {
-            ArrayList<Media> filteredList = new ArrayList<>();
-
-            // Apply filter to all media in library
-            for (int i = 0; i < library.getSize(); i++) {
-                Media m = library.getMedia().get(i);
-                if (!excludeList.contains(m.getClass().getSimpleName())) {
-                    filteredList.add(m);
-                }
-            }
-            draw(filteredList);
+        if (excludedTypes != MediaType.NONE) {
+            draw(library.getMedia(excludedTypes)); // merged from the lists of the included types
         } else {
             draw(library.getMedia());
         }
+        showingLibrary = true; // entries now follow changes to the library
     }
 
-    /** DrawTask class for parallel draw method implementation */
-    private class DrawTask extends RecursiveAction {
-        private final int THRESHOLD = 100;
-        private ArrayList<Media> list;
-        private int start;
-        private int end;
+    /** Draws a list of Media */
+    public void draw(List<Media> list) {
+        showingLibrary = false;
+        showEntries(list);
+        MediaLibrary.setTitle(name);
+    }
 
-        public DrawTask(ArrayList<Media> list, int start, int end) {
-            this.list = list;
-            this.start = start;
-            this.end = end;
+    /** Redraws the shelf after the library changes. If the shelf shows the library, the changed
+     *  entries have already been moved into place; otherwise the library is drawn. */
+    private void update() {
+        if (showingLibrary) {
+            MediaLibrary.setTitle(name);
+        } else {
+            draw();
         }
+    }
 
-        @Override
-        protected void compute() {
-            if (end - start < THRESHOLD) {
-                for (int i = start; i < end; i++) {
-                    int x = (i * 80) + 60;
-                    drawEntry(list.get(i), x);
+    /** Draws a group */
+    public void drawGroup(String name) {
+        List<Media> members = library.groupSearch(name); // Get Media that are in the group
+        showingLibrary = false;
+        showEntries(members);
+
+        if (members.isEmpty()) { // entered group does not exist
+            showShelfBar = false;
+            shelfBar.setVisible(false);
+            updateVisibleEntries();
+        }
+    }
+
+    /** Draws the collection of a media: the media joined to it by chains of neighbors with a
+     *  similarity of at least COLLECTION_SIMILARITY, in the order of the library */
+    public void drawCollection(Media m) {
+        drawFound(() -> {
+            for (List<Media> cluster : similarityIndex.getClusters(m.getClass(), COLLECTION_SIMILARITY)) {
+                for (Media member : cluster) {
+                    if (member == m) {
+                        List<Media> collection = new ArrayList<>(cluster);
+                        collection.sort(library.getComparator());
+                        return collection;
+                    }
+                }
+            }
+            return Collections.singletonList(m); // media is not in the library
+        }, "Collection: " + m.getName());
+    }
+
+    /** Draws the chain of most similar media leading from one media to another of the same type,
+     *  or an empty shelf if no chain joins them */
+    public void drawPath(Media from, Media to) {
+        drawFound(() -> similarityIndex.getPath(from, to), "Path: " + from.getName() + " to " + to.getName());
+    }
+
+    /** Finds entries in the background, since the first lookup of a type scores all of its
+     *  pairs, then draws them with a title; the shelf bar is hidden if none were found */
+    private void drawFound(Callable<List<Media>> finder, String title) {
+        if (findTask != null) {
+            findTask.cancel();
+        }
+
+        Task<List<Media>> task = new Task<>() {
+            @Override
+            protected List<Media> call() throws Exception {
+                return finder.call();
+            }
+        };
+
+        // Runs on the JavaFX thread once the entries are found
+        task.setOnSucceeded(e -> {
+            if (task == findTask) {
+                findTask = null;
+                List<Media> found = task.getValue();
+                showingLibrary = false;
+                showEntries(found);
+                MediaLibrary.setTitle(title);
+
+                if (found.isEmpty()) {
+                    showShelfBar = false;
+                    shelfBar.setVisible(false);
+                    updateVisibleEntries();
                 }
-            } else {
-                int middle = (start + end) / 2;
-                invokeAll(new DrawTask(list, start, middle),
-                        new DrawTask(list, middle, end));
             }
+        });
+
+        findTask = task;
+        BackgroundExecutor.execute(task);
+    }
+
+    /** Returns true if the shelf is painted on a canvas instead of with a node per entry */
+    public boolean isCanvasMode() {
+        return canvasMode;
+    }
+
+    /** Switches between painting the shelf on a canvas, which is faster for large libraries,
+     *  and drawing it with a node per visible entry */
+    public void setCanvasMode(boolean canvasMode) {
+        this.canvasMode = canvasMode;
+        updateRenderer();
+    }
+
+    /** Returns the horizontal scale of the shelf */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /** Returns the horizontal scale of the shelf as a property, which changes when the shelf is
+     *  zoomed in by clicking it */
+    public ReadOnlyDoubleProperty zoomProperty() {
+        return zoomLevel.getReadOnlyProperty();
+    }
+
+    /** Scales the shelf horizontally, keeping the entry in the middle of the viewport in place.
+     *  Zoomed out, the shelf is painted with thinner entries, then with bands of color. */
+    public void setZoom(double zoom) {
+        if (zoom == this.zoom) {
+            return;
+        }
+
+        double center = 0;
+        if (viewport != null) {
+            center = (getScrollOffset() + viewport.getViewportBounds().getWidth() / 2 - FIRST_ENTRY_X) / getEntrySpacing();
         }
+        setZoom(zoom, center);
     }
 
-    /** Draws an ArrayList of Media */
-    public void draw(ArrayList<Media> list) {
-        this.getChildren().clear();
-        RecursiveAction mainTask = new DrawTask(list, 0, list.size());
-        ForkJoinPool pool = new ForkJoinPool();
-        pool.invoke(mainTask); // invoke task
-        drawShelfBar(list.size());
-        MediaLibrary.setTitle(name);
+    /** Scales the shelf horizontally and scrolls so that a position, in entries, is in the
+     *  middle of the viewport */
+    private void setZoom(double zoom, double center) {
+        this.zoom = Math.max(MIN_ZOOM, Math.min(1, zoom));
+        zoomLevel.set(this.zoom);
+        resizeShelf(entries.size());
+
+        if (viewport != null) {
+            double viewportWidth = viewport.getViewportBounds().getWidth();
+            double scrollWidth = getShelfWidth(entries.size()) - viewportWidth;
+            double offset = FIRST_ENTRY_X + center * getEntrySpacing() - viewportWidth / 2;
+            double hvalue = scrollWidth <= 0 ? 0 : Math.max(0, Math.min(1, offset / scrollWidth));
+            viewport.setHvalue(viewport.getHmin() + hvalue * (viewport.getHmax() - viewport.getHmin()));
+        }
+
+        updateRenderer();
     }
 
-    /** Draws a group */
-    public void drawGroup(String name) {
-        this.getChildren().clear();
+    /** Returns true if the shelf is painted on the canvas rather than drawn with nodes */
+    private boolean isPainted() {
+        return canvasMode || zoom < 1;
+    }
+
+    /** Returns the distance between the left edges of entries at the current zoom */
+    private double getEntrySpacing() {
+        return ENTRY_SPACING * zoom;
+    }
 
-        if (!library.isGroup(name)) {
-            return; // entered group does not exist
+    /** Switches between drawing the shelf with nodes and painting it, after the shelf style or
+     *  zoom changes */
+    private void updateRenderer() {
+        for (Spine spine : visibleSpines.values()) {
+            spine.release();
         }
+        visibleSpines.clear();
 
-        Set<Media> keys = library.getGroupKeys(); // Get Media that are in groups
+        hoveredIndex = -1;
+        Tooltip.uninstall(shelfCanvas, entryTooltip);
+        shelfCanvas.setVisible(isPainted());
+        shelfBar.setVisible(showShelfBar && !isPainted());
+        updateVisibleEntries();
+    }
 
-        double x = 60;
-        int numEntries = 0;
+    /** Sets the scroll pane that shows this view; only the entries inside its viewport are drawn */
+    public void setViewport(ScrollPane viewport) {
+        this.viewport = viewport;
+        viewport.hvalueProperty().addListener((observable, oldValue, newValue) -> updateVisibleEntries());
+        viewport.viewportBoundsProperty().addListener((observable, oldValue, newValue) -> updateVisibleEntries());
+        updateVisibleEntries();
+    }
 
-        // Iterate through Media in groups
-        for (Media m : keys) {
-            String val = library.getGroup(m);
-            if (val != null && val.equals(name)) {
-                drawEntry(m, x);
-                x += 80;
-                numEntries++;
+    /** Puts a list of media on the shelf, drawing only the entries that can be seen */
+    private void showEntries(List<Media> list) {
+        if (findTask != null) { // the entries being found would replace these
+            findTask.cancel();
+            findTask = null;
+        }
+
+        entries = new ArrayList<>(list);
+        layout = new ShelfLayout(entries.size());
+        entriesVersion++;
+        hoveredIndex = -1;
+        blockColors = new Color[(entries.size() + COLOR_BLOCK_SIZE - 1) / COLOR_BLOCK_SIZE];
+
+        // Every drawn spine shows an entry of the old list, so all of them are rebound
+        for (Spine spine : visibleSpines.values()) {
+            spine.release();
+        }
+        visibleSpines.clear();
+
+        drawShelfBar(entries.size());
+        updateVisibleEntries();
+        prepareLayout();
+    }
+
+    /** Measures the names of every entry on the shelf in the background, so entries that scroll
+     *  into view are drawn without measuring them on the JavaFX thread */
+    private void prepareLayout() {
+        if (layoutTask != null) {
+            layoutTask.cancel();
+            layoutTask = null;
+        }
+
+        if (entries.size() <= LAYOUT_CHUNK_SIZE) {
+            return; // few enough to measure as they are drawn
+        }
+
+        List<Media> layoutEntries = new ArrayList<>(entries); // entries can change while names are measured
+        int version = entriesVersion;
+        Task<ShelfLayout> task = new Task<>() {
+            @Override
+            protected ShelfLayout call() {
+                ShelfLayout prepared = new ShelfLayout(layoutEntries.size());
+                new LayoutTask(prepared, layoutEntries, 0, layoutEntries.size(), this).invoke(); // measures chunks in parallel
+                return isCancelled() ? null : prepared;
             }
+        };
+
+        // Runs on the JavaFX thread once every name is measured
+        task.setOnSucceeded(e -> {
+            if (task == layoutTask && version == entriesVersion) {
+                layoutTask = null;
+                layout = task.getValue();
+            }
+        });
+
+        layoutTask = task;
+        BackgroundExecutor.execute(task);
+    }
+
+    /** Adds the nodes of the bound spines to the view in one change, so the scene graph is only
+     *  updated once per draw or scroll */
+    private void commitSpines() {
+        committedNodes.clear();
+        committedNodes.add(shelfBar);
+        committedNodes.add(shelfCanvas);
+        for (Spine spine : visibleSpines.values()) {
+            committedNodes.add(spine.entry);
+            committedNodes.add(spine.nameText);
         }
 
-        drawShelfBar(numEntries);
+        this.getChildren().setAll(committedNodes);
+        spinesChanged = false;
+    }
+
+    /** Draws the entries inside the viewport plus a buffer on each side, reusing the spines of
+     *  entries that have scrolled out of view */
+    private void updateVisibleEntries() {
+        int first = 0;
+        int last = entries.size(); // exclusive
+        double left = 0; // part of the shelf that is shown
+        double right = getShelfWidth(entries.size());
+        if (viewport != null && viewport.getViewportBounds().getWidth() > 0) {
+            double viewportWidth = viewport.getViewportBounds().getWidth();
+            double offset = getScrollOffset();
+
+            first = Math.max(0, (int) Math.floor((offset - FIRST_ENTRY_X) / getEntrySpacing()) - BUFFER_ENTRIES);
+            last = Math.min(entries.size(),
+                    (int) Math.ceil((offset + viewportWidth - FIRST_ENTRY_X) / getEntrySpacing()) + BUFFER_ENTRIES);
+            left = offset;
+            right = Math.min(right, offset + viewportWidth);
+        }
+
+        if (zoom >= NAME_ZOOM) {
+            layout.prepare(entries, first, last); // names not yet measured in the background
+        }
+
+        if (isPainted()) {
+            if (spinesChanged) {
+                commitSpines(); // spines were released when switching to the canvas
+            }
+
+            // The canvas only covers the viewport, so its size does not grow with the library
+            paintShelf(first, last, left, right);
+            return;
+        }
+
+        // Release spines that are no longer in range
+        for (Iterator<Map.Entry<Integer, Spine>> iterator = visibleSpines.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Integer, Spine> entry = iterator.next();
+            if (entry.getKey() < first || entry.getKey() >= last) {
+                entry.getValue().release();
+                iterator.remove();
+            }
+        }
+
+        // Bind a spine to each entry in range that does not have one
+        for (int i = first; i < last; i++) {
+            if (!visibleSpines.containsKey(i)) {
+                Spine spine = spareSpines.isEmpty() ? new Spine() : spareSpines.pop();
+                spine.bind(entries.get(i), layout.getName(i), layout.getWidth(i),
+                        FIRST_ENTRY_X + i * ENTRY_SPACING);
+                visibleSpines.put(i, spine);
+            }
+        }
+
+        if (spinesChanged) {
+            commitSpines();
+        }
+    }
+
+    /** Returns the x position of the left edge of the viewport on the shelf */
+    private double getScrollOffset() {
+        double viewportWidth = viewport.getViewportBounds().getWidth();
+        double scrollRange = viewport.getHmax() - viewport.getHmin();
+        return Math.max(0, getShelfWidth(entries.size()) - viewportWidth) *
+                (scrollRange == 0 ? 0 : (viewport.getHvalue() - viewport.getHmin()) / scrollRange);
+    }
+
+    /** Puts a media that was added to the library on the shelf, moving the entries after it
+     *  one place to the right */
+    private void insertEntry(Media m) {
+        // Filtered entries are merged from the lists of the included types, like draw()
+        int index = excludedTypes == MediaType.NONE ? indexOf(library.getMedia(), m) :
+                library.indexOf(m, excludedTypes);
+        if (index < 0) {
+            return;
+        }
+
+        entries.add(index, m);
+        layout.insert(index);
+        shiftSpines(index, 1);
+        entriesChanged(index);
+    }
+
+    /** Takes a media that was removed from the library off the shelf, moving the entries after
+     *  it one place to the left */
+    private void removeEntry(Media m) {
+        int index = indexOf(entries, m);
+        if (index < 0) {
+            return;
+        }
+
+        entries.remove(index);
+        layout.remove(index);
+        Spine spine = visibleSpines.remove(index);
+        if (spine != null) {
+            spine.release();
+        }
+        shiftSpines(index + 1, -1);
+        entriesChanged(index);
+    }
+
+    /** Moves the spines of the entries from an index onward by a number of places */
+    private void shiftSpines(int from, int places) {
+        HashMap<Integer, Spine> shifted = new HashMap<>();
+        for (Map.Entry<Integer, Spine> entry : visibleSpines.entrySet()) {
+            if (entry.getKey() >= from) {
+                entry.getValue().shift(places * ENTRY_SPACING);
+                shifted.put(entry.getKey() + places, entry.getValue());
+            } else {
+                shifted.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        visibleSpines.clear();
+        visibleSpines.putAll(shifted);
+    }
+
+    /** Resizes the shelf and draws the entries that moved into view after the entry at an index
+     *  is inserted or removed */
+    private void entriesChanged(int index) {
+        // Blocks from the changed entry onward now hold different entries
+        Color[] oldBlockColors = blockColors;
+        blockColors = new Color[(entries.size() + COLOR_BLOCK_SIZE - 1) / COLOR_BLOCK_SIZE];
+        System.arraycopy(oldBlockColors, 0, blockColors, 0,
+                Math.min(index / COLOR_BLOCK_SIZE, Math.min(oldBlockColors.length, blockColors.length)));
+
+        entriesVersion++;
+        hoveredIndex = -1;
+        Tooltip.uninstall(shelfCanvas, entryTooltip);
+
+        drawShelfBar(entries.size());
+        updateVisibleEntries();
+        if (layoutTask != null) {
+            prepareLayout(); // names being measured are for the old entries
+        }
+    }
+
+    /** Returns the index of a media in a list sorted like the library, or -1 if it is not in the list */
+    private int indexOf(List<Media> list, Media m) {
+        int index = Collections.binarySearch(list, m, library.getComparator());
+        if (index >= 0) {
+            // Find the media itself among the entries that sort the same
+            for (int i = index; i >= 0 && library.getComparator().compare(list.get(i), m) == 0; i--) {
+                if (list.get(i) == m) {
+                    return i;
+                }
+            }
+            for (int i = index + 1; i < list.size() && library.getComparator().compare(list.get(i), m) == 0; i++) {
+                if (list.get(i) == m) {
+                    return i;
+                }
+            }
+        }
+
+        // Not found in sorted position
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == m) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the width of the shelf: either the width of the full screen or the width of the
+     *  entire library, whichever is larger */
+    private double getShelfWidth(int numEntries) {
+        Rectangle2D screenBounds = Screen.getPrimary().getVisualBounds();
+        return Math.max(screenBounds.getWidth(), 2 * FIRST_ENTRY_X +
+                getEntrySpacing() * numEntries - (ENTRY_SPACING - ENTRY_WIDTH) * zoom);
     }
 
     /** Draws the bottom shelf bar */
     private void drawShelfBar(int numEntries) {
-        Rectangle2D screenBounds = Screen.getPrimary().getVisualBounds();
-        double screenWidth = screenBounds.getWidth();
+        showShelfBar = true;
+        shelfBar.setVisible(!isPainted());
+        resizeShelf(numEntries);
+    }
 
-        // Draw shelf bar to be either the width of the full screen or
-        // the width of the entire library, whichever is larger
-        Rectangle bar = new Rectangle(0, 397, Math.max(screenWidth, 105 + 80 * numEntries), 15);
-        bar.setFill(Color.WHITE);
-        this.getChildren().add(bar);
+    /** Sets the width of the view and the shelf bar to fit a number of entries */
+    private void resizeShelf(int numEntries) {
+        double width = getShelfWidth(numEntries);
+        shelfBar.setWidth(width);
+
+        // Only visible entries have nodes, so the view's size is set from the shelf instead
+        setMinWidth(width);
+        setPrefWidth(width);
     }
 
-    /** Draws one media entry (rectangle and text) */
-    private void drawEntry(Media m, double x) {
-        Rectangle entry = new Rectangle(x, 70, 65, 327);
-        entry.setFill(m.getColor()); // set fill color
+    /** Paints the entries from first to last (exclusive) and the shelf bar onto the canvas,
+     *  which covers the shelf from x = left to x = right */
+    private void paintShelf(int first, int last, double left, double right) {
+        shelfCanvas.setLayoutX(left);
+        shelfCanvas.setWidth(Math.max(0, right - left));
+        shelfCanvas.setHeight(SHELF_HEIGHT);
+
+        GraphicsContext gc = shelfCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, shelfCanvas.getWidth(), SHELF_HEIGHT);
+        if (getEntrySpacing() < MIN_SPINE_SPACING) {
+            paintColorBands(gc, first, last);
+        } else {
+            for (int i = first; i < last; i++) {
+                paintSpine(gc, i);
+            }
+        }
 
-        Text nameText = new Text(0, 240, m.getName());
+        if (showShelfBar) {
+            gc.setFill(Color.WHITE);
+            gc.fillRect(0, 397, shelfCanvas.getWidth(), 15);
+        }
+    }
 
-        // Font is set to allow for accurate length calculation
-        nameText.setFont(Font.font("Manrope", FontWeight.BOLD, 18));
-        nameText.getStyleClass().add("entry");
-        double textLength = calculateTextLength(nameText);
+    /** Paints the blocks of entries from first to last (exclusive) as bands of their average
+     *  color, for a shelf zoomed out too far to paint each entry */
+    private void paintColorBands(GraphicsContext gc, int first, int last) {
+        double spacing = getEntrySpacing();
+        for (int block = first / COLOR_BLOCK_SIZE; block * COLOR_BLOCK_SIZE < last; block++) {
+            int blockFirst = block * COLOR_BLOCK_SIZE;
+            int blockLast = Math.min(blockFirst + COLOR_BLOCK_SIZE, entries.size());
+            double x = FIRST_ENTRY_X + blockFirst * spacing - shelfCanvas.getLayoutX();
+
+            gc.setFill(getBlockColor(block));
+            gc.fillRect(x, 70, (blockLast - blockFirst) * spacing, 327);
+        }
+    }
+
+    /** Returns the average color of a block of entries, finding it the first time it is needed */
+    private Color getBlockColor(int block) {
+        if (blockColors[block] == null) {
+            int blockFirst = block * COLOR_BLOCK_SIZE;
+            int blockLast = Math.min(blockFirst + COLOR_BLOCK_SIZE, entries.size());
+            double red = 0;
+            double green = 0;
+            double blue = 0;
+            for (int i = blockFirst; i < blockLast; i++) {
+                double[] color = entries.get(i).getColorArray();
+                red += color[0];
+                green += color[1];
+                blue += color[2];
+            }
 
-        if (textLength > 270) {
-            nameText.setText(shortenText(nameText, 270)); // Shorten name
-            textLength = calculateTextLength(nameText);
+            int size = blockLast - blockFirst;
+            blockColors[block] = new Color(red / size, green / size, blue / size, 1);
         }
+        return blockColors[block];
+    }
 
-        // Text is centered on rectangle before being rotated
-        double leftBound = (x + 32.5) - (textLength / 2);
-        nameText.setX(leftBound);
-        nameText.setRotate(270); // Text is rotated
+    /** Paints one entry (rectangle and rotated name) onto the canvas; zoomed out, entries are
+     *  thinner and names are left out once they no longer fit */
+    private void paintSpine(GraphicsContext gc, int index) {
+        Media m = entries.get(index);
+        double x = FIRST_ENTRY_X + index * getEntrySpacing() - shelfCanvas.getLayoutX();
+        double width = ENTRY_WIDTH * zoom;
+        boolean hovered = index == hoveredIndex;
+
+        gc.clearRect(x, 70, width, 327);
+        gc.setFill(hovered ? m.getColor().darker() : m.getColor());
+        gc.fillRect(x, 70, width, 327);
+        if (zoom < NAME_ZOOM) {
+            return;
+        }
+
+        // Name is centered on the rectangle and rotated, like the text of a spine
+        String name = layout.getName(index);
+        gc.save();
+        gc.translate(x + width / 2, getNameCenterY());
+        gc.rotate(-90);
+        gc.setFont(ENTRY_FONT);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
 
         // Name color is set to black or white depending on the lightness of the rectangle color
-        nameText.setStyle(m.getColorArray()[0] + m.getColorArray()[1] +
-                m.getColorArray()[2] < 1.6 ? "-fx-fill: white;" : "-fx-fill: black;");
+        gc.setFill(m.getColorArray()[0] + m.getColorArray()[1] +
+                m.getColorArray()[2] < 1.6 ? Color.WHITE : Color.BLACK);
+        gc.fillText(name, 0, 0);
 
-        // Entry reacts to mouse entering and exiting
-        nameText.setOnMouseEntered(e -> {
-            nameText.setUnderline(true);
-            entry.setFill(m.getColor().darker());
-        });
+        if (hovered) {
+            double textLength = layout.getWidth(index);
+            gc.fillRect(-textLength / 2, ENTRY_FONT.getSize() / 2, textLength, 1.5); // underline
+        }
+        gc.restore();
+    }
 
-        nameText.setOnMouseExited(e -> {
-            nameText.setUnderline(false);
-            entry.setFill(m.getColor());
-        });
+    /** Returns the index of the entry at a point on the shelf, or -1 if there is none */
+    private int getEntryIndexAt(double x, double y) {
+        if (y < 70 || y > 397 || x < FIRST_ENTRY_X) {
+            return -1;
+        }
 
-        entry.setOnMouseEntered(e -> entry.setFill(m.getColor().darker()));
-        entry.setOnMouseExited(e -> entry.setFill(m.getColor()));
+        int index = (int) ((x - FIRST_ENTRY_X) / getEntrySpacing());
+        boolean bands = getEntrySpacing() < MIN_SPINE_SPACING; // color bands have no gaps
+        boolean onEntry = bands || x - (FIRST_ENTRY_X + index * getEntrySpacing()) <= ENTRY_WIDTH * zoom; // not in the gap after it
+        return onEntry && index < entries.size() ? index : -1;
+    }
+
+    /** Sets the entry under the mouse on the canvas, repainting the old and new entries */
+    private void setHoveredIndex(int index) {
+        if (index == hoveredIndex) {
+            return;
+        }
+
+        int oldIndex = hoveredIndex;
+        hoveredIndex = index;
+
+        // Color bands are not repainted, since a single entry is too thin to highlight
+        GraphicsContext gc = shelfCanvas.getGraphicsContext2D();
+        boolean spines = getEntrySpacing() >= MIN_SPINE_SPACING;
+        if (spines && oldIndex != -1 && oldIndex < entries.size()) {
+            paintSpine(gc, oldIndex);
+        }
+
+        if (index == -1) {
+            Tooltip.uninstall(shelfCanvas, entryTooltip);
+        } else {
+            if (spines) {
+                paintSpine(gc, index);
+            }
+            entryTooltip.setText(entries.get(index).getName());
+            Tooltip.install(shelfCanvas, entryTooltip);
+        }
+    }
+
+    /** Creates the context menu and tooltip shared by every entry */
+    private void createEntryMenu() {
+        entryTooltip.setFont(Font.font(14));
 
-        // Entry context menu
         MenuItem itemView = new MenuItem("View");
         MenuItem itemEdit = new MenuItem("Edit");
         MenuItem itemDel = new MenuItem("Delete");
+        MenuItem itemCollection = new MenuItem("Show Collection");
+        MenuItem itemPathStart = new MenuItem("Start Path Here");
+        entryMenu.getItems().addAll(itemView, itemEdit, itemDel, itemCollection, itemPathStart, pathEndItem);
+
+        itemView.setOnAction(e -> showViewScreen(menuMedia));
+        itemEdit.setOnAction(e -> showEditScreen(menuMedia));
+        itemDel.setOnAction(e -> remove(menuMedia));
+        itemCollection.setOnAction(e -> drawCollection(menuMedia));
+        itemPathStart.setOnAction(e -> pathStart = menuMedia);
+        pathEndItem.setOnAction(e -> drawPath(pathStart, menuMedia));
+    }
 
-        ContextMenu contextMenu = new ContextMenu();
-        contextMenu.getItems().addAll(itemView, itemEdit, itemDel);
-
-        entry.setOnContextMenuRequested(e -> contextMenu.show(entry, e.getScreenX(), e.getScreenY()));
-        nameText.setOnContextMenuRequested(e -> contextMenu.show(entry, e.getScreenX(), e.getScreenY()));
+    /** Shows the context menu of an entry at a point on the screen */
+    private void showEntryMenu(Media m, Node anchor, double screenX, double screenY) {
+        menuMedia = m;
+        // A path joins two media of the same type, from a start chosen earlier
+        pathEndItem.setDisable(pathStart == null || pathStart == m || pathStart.getClass() != m.getClass());
+        entryMenu.show(anchor, screenX, screenY);
+    }
 
-        itemView.setOnAction(e -> showViewScreen(m));
-        itemEdit.setOnAction(e -> showEditScreen(m));
-        itemDel.setOnAction(e -> {
-            remove(m);
-            draw();
+    /** Sets up hit testing on the canvas: hovering shows a tooltip, a left click shows the
+     *  entry (or zooms in around it), and a right click opens the entry's context menu */
+    private void createCanvasHandlers() {
+        shelfCanvas.setOnMouseMoved(e ->
+                setHoveredIndex(getEntryIndexAt(shelfCanvas.getLayoutX() + e.getX(), e.getY())));
+        shelfCanvas.setOnMouseExited(e -> setHoveredIndex(-1));
+
+        shelfCanvas.setOnMouseClicked(e -> {
+            int index = getEntryIndexAt(shelfCanvas.getLayoutX() + e.getX(), e.getY());
+            if (e.getButton() == MouseButton.PRIMARY && index != -1) {
+                if (zoom < 1) {
+                    setZoom(1, index + 0.5); // zoom back in around the clicked entry
+                } else {
+                    showViewScreen(entries.get(index));
+                }
+            }
         });
 
-        // Show "view" screen when an entry is left-clicked
-        entry.setOnMouseClicked(e -> {
-            if (e.getButton() == MouseButton.PRIMARY) {
-                showViewScreen(m);
+        shelfCanvas.setOnContextMenuRequested(e -> {
+            int index = getEntryIndexAt(shelfCanvas.getLayoutX() + e.getX(), e.getY());
+            if (index != -1) {
+                showEntryMenu(entries.get(index), shelfCanvas, e.getScreenX(), e.getScreenY());
             }
         });
+    }
+
+    /** Returns the y position of the middle of an entry name, which is where the name of a
+     *  spine is rotated around */
+    private double getNameCenterY() {
+        if (Double.isNaN(nameCenterY)) {
+            measuringText.setText(" ");
+            Bounds bounds = measuringText.getLayoutBounds();
+            nameCenterY = 240 + (bounds.getMinY() + bounds.getMaxY()) / 2; // spine names have a baseline of 240
+        }
+        return nameCenterY;
+    }
+
+    /** Short names of the entries on a shelf and their widths, measured when first needed */
+    private static class ShelfLayout {
+        private String[] names; // null until measured
+        private double[] widths;
+        private int size;
+
+        public ShelfLayout(int size) {
+            this.names = new String[Math.max(size, 16)];
+            this.widths = new double[names.length];
+            this.size = size;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        public double getWidth(int index) {
+            return widths[index];
+        }
 
-        nameText.setOnMouseClicked(e -> {
-            if (e.getButton() == MouseButton.PRIMARY) {
-                showViewScreen(m);
+        /** Makes room for an entry that is not yet measured */
+        public void insert(int index) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                widths = Arrays.copyOf(widths, size * 2);
             }
-        });
 
-        Platform.runLater(() -> this.getChildren().addAll(entry, nameText));
+            System.arraycopy(names, index, names, index + 1, size - index);
+            System.arraycopy(widths, index, widths, index + 1, size - index);
+            names[index] = null;
+            size++;
+        }
+
+        /** Removes the name of an entry */
+        public void remove(int index) {
+            System.arraycopy(names, index + 1, names, index, size - index - 1);
+            System.arraycopy(widths, index + 1, widths, index, size - index - 1);
+            size--;
+            names[size] = null;
+        }
+
+        /** Measures the names of the entries from first to last (exclusive) that are not yet measured */
+        public void prepare(List<Media> entries, int first, int last) {
+            TextWidthCache widthCache = TextWidthCache.get(ENTRY_FONT);
+            for (int i = first; i < last; i++) {
+                if (names[i] == null) {
+                    String name = widthCache.shorten(entries.get(i).getName(), 270); // Shorten name if it does not fit
+                    names[i] = name;
+                    widths[i] = widthCache.getWidth(name);
+                }
+            }
+        }
+    }
+
+    /** Measures the names of a range of entries, splitting the range between threads */
+    private static class LayoutTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ShelfLayout layout;
+        private final List<Media> entries;
+        private final int first;
+        private final int last;
+        private final Task<?> owner; // stops measuring once cancelled
+
+        public LayoutTask(ShelfLayout layout, List<Media> entries, int first, int last, Task<?> owner) {
+            this.layout = layout;
+            this.entries = entries;
+            this.first = first;
+            this.last = last;
+            this.owner = owner;
+        }
+
+        @Override
+        protected void compute() {
+            if (owner.isCancelled()) {
+                return;
+            }
+
+            if (last - first <= LAYOUT_CHUNK_SIZE) {
+                layout.prepare(entries, first, last);
+            } else {
+                int middle = (first + last) >>> 1;
+                invokeAll(new LayoutTask(layout, entries, first, middle, owner),
+                        new LayoutTask(layout, entries, middle, last, owner));
+            }
+        }
+    }
+
+    /** Moves entries on and off the shelf as the library changes, while the shelf shows the library */
+    private class ShelfUpdater implements Library.Listener<Media> {
+        @Override
+        public void elementAdded(Media m) {
+            if (showingLibrary) {
+                insertEntry(m);
+            }
+        }
+
+        @Override
+        public void elementRemoved(Media m) {
+            if (showingLibrary) {
+                removeEntry(m);
+            }
+        }
+
+        @Override
+        public void elementsReplaced() {
+            showingLibrary = false; // the whole library is drawn again by the next update
+        }
+    }
+
+    /** Spine class for the rectangle and name of one entry; spines are reused for other entries
+     *  as the shelf scrolls */
+    private class Spine {
+        private final Rectangle entry = new Rectangle(0, 70, 65, 327);
+        private final Text nameText = new Text(0, 240, "");
+        private Media m; // entry shown by this spine, or null if the spine is spare
+        private Color color; // color of the entry, kept so hovering does not create it again
+        private Color hoverColor; // darker color shown while the mouse is over the entry
+
+        /** Creates a spine and its event handlers, which act on whichever entry it shows */
+        public Spine() {
+            // Font is set to allow for accurate length calculation
+            nameText.setFont(ENTRY_FONT);
+            nameText.getStyleClass().add("entry");
+            nameText.setRotate(270); // Text is rotated
+
+            // One tooltip is shared by every spine; it is given the name of the entry under the mouse
+            Tooltip.install(entry, entryTooltip);
+            Tooltip.install(nameText, entryTooltip);
+
+            // Entry reacts to mouse entering and exiting
+            nameText.setOnMouseEntered(e -> {
+                nameText.setUnderline(true);
+                entry.setFill(hoverColor);
+                entryTooltip.setText(m.getName());
+            });
+
+            nameText.setOnMouseExited(e -> {
+                nameText.setUnderline(false);
+                entry.setFill(color);
+            });
+
+            entry.setOnMouseEntered(e -> {
+                entry.setFill(hoverColor);
+                entryTooltip.setText(m.getName());
+            });
+            entry.setOnMouseExited(e -> entry.setFill(color));
+
+            // Entry context menu
+            entry.setOnContextMenuRequested(e -> showEntryMenu(m, entry, e.getScreenX(), e.getScreenY()));
+            nameText.setOnContextMenuRequested(e -> showEntryMenu(m, entry, e.getScreenX(), e.getScreenY()));
+
+            // Show "view" screen when an entry is left-clicked
+            entry.setOnMouseClicked(e -> {
+                if (e.getButton() == MouseButton.PRIMARY) {
+                    showViewScreen(m);
+                }
+            });
+
+            nameText.setOnMouseClicked(e -> {
+                if (e.getButton() == MouseButton.PRIMARY) {
+                    showViewScreen(m);
+                }
+            });
+
+        }
+
+        /** Shows a media entry (rectangle and text) at an x position, with its name already
+         *  shortened to fit and measured */
+        public void bind(Media m, String shortName, double textLength, double x) {
+            this.m = m;
+            this.color = m.getColor();
+            this.hoverColor = color.darker();
+            entry.setX(x);
+            entry.setFill(color); // set fill color
+
+            nameText.setText(shortName);
+            nameText.setUnderline(false);
+
+            // Text is centered on rectangle before being rotated
+            double leftBound = (x + 32.5) - (textLength / 2);
+            nameText.setX(leftBound);
+
+            // Name color is set to black or white depending on the lightness of the rectangle color
+            nameText.setStyle(m.getColorArray()[0] + m.getColorArray()[1] +
+                    m.getColorArray()[2] < 1.6 ? "-fx-fill: white;" : "-fx-fill: black;");
+            spinesChanged = true;
+        }
+
+        /** Moves the spine to the right (or to the left, if dx is negative) */
+        public void shift(double dx) {
+            entry.setX(entry.getX() + dx);
+            nameText.setX(nameText.getX() + dx);
+        }
+
+        /** Makes the spine available for another entry; it is removed from the view at the next commit */
+        public void release() {
+            m = null;
+            color = null;
+            hoverColor = null;
+            spareSpines.push(this);
+            spinesChanged = true;
+        }
     }
 
     /** Displays a screen to view information about a piece of media */
@@ -458,7 +1198,6 @@ public class LibraryView extends Pane {
 
         btDelete.setOnAction(e -> {
             remove(m);
-            draw();
             stage.close();
         });
 
@@ -705,7 +1444,7 @@ public class LibraryView extends Pane {
 
                             pushAction(new Edit(library, oldMovie, (Movie) newMovie.clone(), groupOld, gr));
 
-                            draw();
+                            update();
                             stage.close();
                             library.write();
                             showViewScreen(newMovie);
@@ -748,7 +1487,7 @@ public class LibraryView extends Pane {
 
                             pushAction(new Edit(library, oldShow, (Show) newShow.clone(), groupOld, gr));
 
-                            draw();
+                            update();
                             stage.close();
                             library.write();
                             showViewScreen(newShow);
@@ -788,7 +1527,7 @@ public class LibraryView extends Pane {
 
                             pushAction(new Edit(library, oldGame, (Game) newGame.clone(), groupOld, gr));
 
-                            draw();
+                            update();
                             stage.close();
                             library.write();
                             showViewScreen(newGame);
@@ -820,7 +1559,7 @@ public class LibraryView extends Pane {
 
                         pushAction(new Edit(library, oldMusic, (Music) newMusic.clone(), groupOld, gr));
 
-                        draw();
+                        update();
                         stage.close();
                         library.write();
                         showViewScreen(newMusic);
@@ -851,7 +1590,7 @@ public class LibraryView extends Pane {
 
                         pushAction(new Edit(library, oldBook, (Book) newBook.clone(), groupOld, gr));
 
-                        draw();
+                        update();
                         stage.close();
                         library.write();
                         showViewScreen(newBook);
@@ -884,7 +1623,7 @@ public class LibraryView extends Pane {
 
     private void showSimilarMedia(Media m) {
         Stage stage = new Stage();
-        BubbleDiagramPane similar = new BubbleDiagramPane(library, m);
+        BubbleDiagramPane similar = new BubbleDiagramPane(similarityIndex, m);
 
         Button btOK = new Button("OK");
         btOK.setPrefWidth(70);
@@ -904,6 +1643,7 @@ public class LibraryView extends Pane {
             stage.close();
             showViewScreen(m);
         });
+        stage.setOnHidden(e -> similar.cancel()); // stop scoring once the window is closed
 
         Scene scene = new Scene(bp, 800, 800);
         scene.getStylesheets().add(MediaLibrary.CSS);
@@ -916,32 +1656,16 @@ public class LibraryView extends Pane {
 
     /** Returns a shortened String of a Text object */
     public static String shortenText(Text t, int pixels) {
-        String name = t.getText();
-        double length = calculateTextLength(t);
-
-        if (pixels < length) {
-            // Calculate the percentage (between 0 and 1) of the name that can fit, multiply by
-            // the length of the string to find the maximum number of characters that fit
-            int limit = (int) Math.floor((pixels / length) * name.length());
-            StringBuilder shortName = new StringBuilder();
-
-            for (int i = 0; i < limit && i < name.length(); i++) {
-                shortName.append(name.charAt(i));
-            }
-
-            shortName.append("..."); // Append ellipses
-
-            return shortName.toString();
-        } else {
-            return name;
-        }
+        return TextWidthCache.get(t.getFont()).shorten(t.getText(), pixels);
     }
 
     /** Calculates length of a text object */
     public static double calculateTextLength(Text t) {
         if (t == null)
             return 0;
-        return t.getBoundsInLocal().getWidth();
+        if (t.getWrappingWidth() > 0)
+            return t.getBoundsInLocal().getWidth(); // wrapped text can have several lines
+        return TextWidthCache.get(t.getFont()).getWidth(t.getText());
     }
 
     /** Calculates the height of a text object */
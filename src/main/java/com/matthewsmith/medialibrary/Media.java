@@ -16,6 +16,7 @@ import java.time.Year;
 import java.util.*;
 
 public class Media implements Serializable, Cloneable {
+    private static final long serialVersionUID = 5925246032916773596L;
     private String name;
     private String genre;
     private String description;
@@ -25,6 +26,8 @@ public class Media implements Serializable, Cloneable {
     private double rating;
     private double[] color; // R, G, B, and opacity values
     private final Date dateAdded = new Date();
+    private transient BigramSignature nameSignature; // created when first needed
+    private transient BigramSignature genreSignature; // created when first needed
 
     public Media(String name) {
         this(name, "", "", "", Year.now().getValue(), Year.now().getValue(), 0, new double[4]);
@@ -83,10 +86,12 @@ public class Media implements Serializable, Cloneable {
 
     public void setName(String name) {
         this.name = name;
+        this.nameSignature = null;
     }
 
     public void setGenre(String genre) {
         this.genre = genre;
+        this.genreSignature = null;
     }
 
     public void setDescription(String description) {
@@ -118,6 +123,33 @@ public class Media implements Serializable, Cloneable {
         this.setColorArray(colorArray);
     }
 
+    /** Returns the type of this media; each subclass returns its own, so the type is not stored
+     *  in saved libraries */
+    public MediaType getType() {
+        return MediaType.OTHER;
+    }
+
+    /** Returns the bigram signature of the name */
+    protected BigramSignature getNameSignature() {
+        if (nameSignature == null) {
+            nameSignature = new BigramSignature(name);
+        }
+        return nameSignature;
+    }
+
+    /** Returns the bigram signature of the genre */
+    protected BigramSignature getGenreSignature() {
+        if (genreSignature == null) {
+            genreSignature = new BigramSignature(genre);
+        }
+        return genreSignature;
+    }
+
+    /** Returns the bigram signature of the creator (director, author, etc.), or null if there is none */
+    protected BigramSignature getCreatorSignature() {
+        return null;
+    }
+
     public static boolean validateRating(double rating) {
         return (rating >= 0 && rating <= 10);
     }
@@ -154,10 +186,10 @@ public class Media implements Serializable, Cloneable {
     }
 
     public double getSimilarity(Media m) {
-        double nameValue = compareStrings(name.toLowerCase(),
-                m.getName().toLowerCase()) * 0.15; // name is worth 15% of score
-        double genreValue = compareStrings(genre.toLowerCase(),
-                m.getGenre().toLowerCase()) * 0.55; // genre is worth 55% of score
+        double nameValue = getNameSignature().compare(
+                m.getNameSignature()) * 0.15; // name is worth 15% of score
+        double genreValue = getGenreSignature().compare(
+                m.getGenreSignature()) * 0.55; // genre is worth 55% of score
 
         // if year difference is >20, the year value is 0
         int yearDifference = Math.abs(year - m.getYear());
@@ -170,35 +202,7 @@ public class Media implements Serializable, Cloneable {
 
     /** Finds Jaccard similarity coefficient of two strings by creating sets of bigrams */
     protected static double compareStrings(String s1, String s2) {
-        if (s1.isBlank() || s2.isBlank()) {
-            return 0;
-        } else if (s1.length() == 1 && s2.length() == 1) {
-            return s1.equals(s2) ? 1 : 0;
-        } else if (s1.length() == 1 || s2.length() == 1) {
-            return s1.charAt(0) == s2.charAt(0) ? 1 : 0;
-        }
-
-        // Create sets of bigrams (for example, ab, bc, cd)
-        Set<String> a = new HashSet<>();
-        Set<String> b = new HashSet<>();
-
-        for (int i = 0; i < s1.length() - 1; i++) {
-            a.add(s1.charAt(i) + s1.charAt(i + 1) + "");
-        }
-
-        for (int i = 0; i < s2.length() - 1; i++) {
-            b.add(s2.charAt(i) + s2.charAt(i + 1) + "");
-        }
-
-        // Store sizes of sets a and b
-        int aSize = a.size();
-        int bSize = b.size();
-
-        a.retainAll(b); // a is an intersection of a and b
-        int intersectionSize = a.size();
-
-        // return |intersection(a,b)| / |union(a,b)|
-        return 1.0 * intersectionSize / (aSize + bSize - intersectionSize);
+        return new BigramSignature(s1).compare(new BigramSignature(s2));
     }
 
     @Override
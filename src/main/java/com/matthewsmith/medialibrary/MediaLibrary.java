@@ -8,26 +8,32 @@
 
 package com.matthewsmith.medialibrary;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
+import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.time.Year;
-import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 public class MediaLibrary extends Application {
     public static final String CSS = new File("./application.css").toURI().toString(); // css stylesheet
+    private static final double SEARCH_DELAY = 250; // milliseconds without typing before a live search runs
     private LibraryView view;
     private Library<Media> library;
+    private Task<List<Media>> searchTask; // most recent live search, or null if there is none
     private static Text sizeText;
     private static Text titleText = new Text(350, 25, "");
 
@@ -38,6 +44,7 @@ public class MediaLibrary extends Application {
         library = new Library<>();
         view = new LibraryView(library);
         ScrollPane libScroll = new ScrollPane(view);
+        view.setViewport(libScroll); // only entries in view are drawn
         loadLibrary();
 
         HBox top = new HBox(70);
@@ -83,7 +90,23 @@ public class MediaLibrary extends Application {
         HBox bottom = new HBox(15);
         bottom.setPadding(new Insets(10, 10, 10, 10));
         sizeText = new Text("Library size: " + library.getSize());
-        bottom.getChildren().addAll(sizeText);
+        Region bottomSpacer = new Region();
+        HBox.setHgrow(bottomSpacer, Priority.ALWAYS);
+
+        // Zoom is set in halvings: 0 is full size and -6 is 1/64 of the width
+        Slider zoomSlider = new Slider(Math.log(LibraryView.MIN_ZOOM) / Math.log(2), 0, 0);
+        zoomSlider.setMajorTickUnit(1);
+        zoomSlider.setMinorTickCount(0);
+        zoomSlider.setSnapToTicks(true);
+        zoomSlider.setShowTickMarks(true);
+        zoomSlider.setTooltip(new Tooltip("Zoom out to see more of the shelf"));
+        zoomSlider.valueProperty().addListener((observable, oldValue, newValue) ->
+                view.setZoom(Math.pow(2, Math.round(newValue.doubleValue()))));
+        view.zoomProperty().addListener((observable, oldValue, newValue) ->
+                zoomSlider.setValue(Math.log(newValue.doubleValue()) / Math.log(2))); // zoomed in by a click
+
+        bottom.getChildren().addAll(sizeText, bottomSpacer, new Text("Zoom"), zoomSlider);
+        bottom.setAlignment(Pos.CENTER_LEFT);
 
         BorderPane bp = new BorderPane();
         bp.setTop(top);
@@ -194,12 +217,16 @@ public class MediaLibrary extends Application {
         Button btClear = new Button("Clear library");
         btClear.setPrefWidth(200);
 
-        other.getChildren().addAll(btInfo, btFilter, btGroup, btSearch, btImport, btExport, btClear);
+        Button btShelfStyle = new Button("Switch shelf style");
+        btShelfStyle.setPrefWidth(200);
+        btShelfStyle.setTooltip(new Tooltip("Paint the shelf as one image, which is faster for large libraries"));
+
+        other.getChildren().addAll(btInfo, btFilter, btGroup, btSearch, btImport, btExport, btClear, btShelfStyle);
 
         BorderPane otherBP = new BorderPane();
         otherBP.setTop(otherHB);
         otherBP.setCenter(other);
-        Scene otherScene = new Scene(otherBP, 300, 360);
+        Scene otherScene = new Scene(otherBP, 300, 405);
         otherScene.getStylesheets().add(CSS);
         Stage otherStage = new Stage();
         otherStage.setScene(otherScene);
@@ -300,41 +327,41 @@ public class MediaLibrary extends Application {
 
         chkMovieFilter.setOnAction(e -> {
             if (chkMovieFilter.isSelected()) {
-                view.removeFilter("Movie");
+                view.removeFilter(MediaType.MOVIE);
             } else {
-                view.addFilter("Movie");
+                view.addFilter(MediaType.MOVIE);
             }
         });
 
         chkShowFilter.setOnAction(e -> {
             if (chkShowFilter.isSelected()) {
-                view.removeFilter("Show");
+                view.removeFilter(MediaType.SHOW);
             } else {
-                view.addFilter("Show");
+                view.addFilter(MediaType.SHOW);
             }
         });
 
         chkGameFilter.setOnAction(e -> {
             if (chkGameFilter.isSelected()) {
-                view.removeFilter("Game");
+                view.removeFilter(MediaType.GAME);
             } else {
-                view.addFilter("Game");
+                view.addFilter(MediaType.GAME);
             }
         });
 
         chkMusicFilter.setOnAction(e -> {
             if (chkMusicFilter.isSelected()) {
-                view.removeFilter("Music");
+                view.removeFilter(MediaType.MUSIC);
             } else {
-                view.addFilter("Music");
+                view.addFilter(MediaType.MUSIC);
             }
         });
 
         chkBookFilter.setOnAction(e -> {
             if (chkBookFilter.isSelected()) {
-                view.removeFilter("Book");
+                view.removeFilter(MediaType.BOOK);
             } else {
-                view.addFilter("Book");
+                view.addFilter(MediaType.BOOK);
             }
         });
 
@@ -435,34 +462,26 @@ public class MediaLibrary extends Application {
             otherStage.close();
         });
 
+        // Search as the user types; every keystroke restarts the delay, so a search only
+        // runs once the user pauses
+        PauseTransition searchDelay = new PauseTransition(Duration.millis(SEARCH_DELAY));
+        searchDelay.setOnFinished(e -> liveSearch(generalSearchTF.getText(), getExcludedTypes(chkMovieSearch,
+                chkShowSearch, chkGameSearch, chkMusicSearch, chkBookSearch), libScroll));
+        generalSearchTF.textProperty().addListener((observable, oldText, newText) -> searchDelay.playFromStart());
+
         btGeneralSearch.setOnAction(e -> {
             generalSearchStage.close();
 
-            // Set up exclusion list
-            ArrayList<String> exclude = new ArrayList<>();
-            if (!chkMovieSearch.isSelected()) {
-                exclude.add("Movie");
-            }
-            if (!chkShowSearch.isSelected()) {
-                exclude.add("Show");
-            }
-            if (!chkGameSearch.isSelected()) {
-                exclude.add("Game");
-            }
-            if (!chkMusicSearch.isSelected()) {
-                exclude.add("Music");
-            }
-            if (!chkBookSearch.isSelected()) {
-                exclude.add("Book");
-            }
+            // Cancel any pending live search so it cannot replace these results
+            searchDelay.stop();
+            cancelLiveSearch();
 
-            ArrayList<Media> results = library.treeSearch(generalSearchTF.getText().toLowerCase());
-            if (results != null) {
-                // Remove all results whose classes have been excluded
-                results.removeIf(m -> exclude.contains(m.getClass().getSimpleName()));
-            }
+            // Results exclude all media whose classes have been excluded
+            int exclude = getExcludedTypes(chkMovieSearch, chkShowSearch,
+                    chkGameSearch, chkMusicSearch, chkBookSearch);
+            List<Media> results = library.search(generalSearchTF.getText(), exclude);
 
-            if (results == null || results.isEmpty()) {
+            if (results.isEmpty()) {
                 showPopup("No results were found with your search criteria.");
             } else {
                 view.draw(results);
@@ -566,6 +585,8 @@ public class MediaLibrary extends Application {
         });
 
         btClearCancel.setOnAction(e -> clearStage.close());
+
+        btShelfStyle.setOnAction(e -> view.setCanvasMode(!view.isCanvasMode()));
     }
 
     /** Show a stage to add media */
@@ -796,6 +817,67 @@ public class MediaLibrary extends Application {
         stage.show();
     }
 
+    /** Returns the mask of the media types whose check boxes are not selected */
+    private static int getExcludedTypes(CheckBox movies, CheckBox shows, CheckBox games,
+                                        CheckBox music, CheckBox books) {
+        int exclude = MediaType.NONE;
+        if (!movies.isSelected()) {
+            exclude |= MediaType.MOVIE.getMask();
+        }
+        if (!shows.isSelected()) {
+            exclude |= MediaType.SHOW.getMask();
+        }
+        if (!games.isSelected()) {
+            exclude |= MediaType.GAME.getMask();
+        }
+        if (!music.isSelected()) {
+            exclude |= MediaType.MUSIC.getMask();
+        }
+        if (!books.isSelected()) {
+            exclude |= MediaType.BOOK.getMask();
+        }
+
+        return exclude;
+    }
+
+    /** Searches for media whose names start with a query on a background thread, then draws
+     *  the results if no newer search has started in the meantime */
+    private void liveSearch(String query, int exclude, ScrollPane libScroll) {
+        cancelLiveSearch(); // a newer query replaces any search that is still running
+
+        if (query.isBlank()) {
+            return;
+        }
+
+        Task<List<Media>> task = new Task<>() {
+            @Override
+            protected List<Media> call() {
+                return library.prefixSearch(query, exclude);
+            }
+        };
+
+        // Runs on the JavaFX thread once the search is complete
+        task.setOnSucceeded(e -> {
+            if (task == searchTask) {
+                searchTask = null;
+                view.draw(task.getValue());
+                setTitle("Search: " + query);
+                libScroll.setHvalue(0);
+            }
+        });
+
+        searchTask = task;
+        BackgroundExecutor.execute(task);
+    }
+
+    /** Cancels the most recent live search, if it is still running */
+    private void cancelLiveSearch() {
+        if (searchTask != null) {
+            searchTask.cancel();
+            searchTask = null;
+        }
+    }
+
     /** Displays a popup with a specified message */
     public void showPopup(String t) {
         BorderPane bp = new BorderPane();
@@ -882,7 +964,7 @@ public class MediaLibrary extends Application {
 
     /** Sets the title of the library */
     public static void setTitle(String title) {
-        String shortenedTitle = LibraryView.shortenText(new Text(title), 130);
+        String shortenedTitle = TextWidthCache.get(Font.getDefault()).shorten(title, 130); // font of a new Text
         titleText.setText(shortenedTitle);
     }
 }
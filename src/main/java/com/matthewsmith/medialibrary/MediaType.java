@@ -0,0 +1,53 @@
+// **********************************************************************************
+// Title: MediaType
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: MediaType.java
+// Description: The types of media, each with a bit so that sets of types can be
+//              stored and checked as an int mask
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+public enum MediaType {
+    MOVIE, SHOW, GAME, MUSIC, BOOK, OTHER; // OTHER is plain Media
+
+    public static final int NONE = 0; // mask of no types
+    private static final MediaType[] TYPES = values(); // values() copies the array on every call
+
+    /** Returns the bit of this type in a mask */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+
+    /** Returns true if a mask contains this type */
+    public boolean isIn(int mask) {
+        return (mask & getMask()) != 0;
+    }
+
+    /** Returns the type of a class of media */
+    public static MediaType of(Class<?> type) {
+        if (type == Movie.class) {
+            return MOVIE;
+        } else if (type == Show.class) {
+            return SHOW;
+        } else if (type == Game.class) {
+            return GAME;
+        } else if (type == Music.class) {
+            return MUSIC;
+        } else if (type == Book.class) {
+            return BOOK;
+        }
+        return OTHER;
+    }
+
+    /** Returns the type with an ordinal */
+    public static MediaType get(int ordinal) {
+        return TYPES[ordinal];
+    }
+
+    /** Returns the number of types */
+    public static int getCount() {
+        return TYPES.length;
+    }
+}
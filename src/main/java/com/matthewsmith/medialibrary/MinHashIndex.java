@@ -0,0 +1,192 @@
+// **********************************************************************************
+// Title: MinHashIndex
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: MinHashIndex.java
+// Description: Finds media that are likely to be similar without comparing every pair,
+//              using MinHash signatures of their bigram sets and banded hash buckets
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+public class MinHashIndex {
+    public static final int DEFAULT_BANDS = 16; // default number of bands per field
+    public static final int DEFAULT_ROWS = 4; // default number of hashes per band
+    private final int bands;
+    private final int rows;
+    private final long[] seeds; // one seed per hash function
+    private final HashMap<Long, ArrayList<Media>> buckets = new HashMap<>();
+    private final IdentityHashMap<Media, long[]> keys = new IdentityHashMap<>(); // bucket keys of each media
+
+    /** Creates an index with 16 bands of 4 hashes for each field */
+    public MinHashIndex() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS);
+    }
+
+    /** Creates an index with a number of bands of a number of hashes for each field; more bands
+     *  find more similar media, and more hashes per band find fewer dissimilar ones */
+    public MinHashIndex(int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("Bands and rows must be at least 1: " + bands + ", " + rows);
+        }
+
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = mix(i + 1L); // fixed seeds so signatures are the same in every run
+        }
+    }
+
+    /** Returns the number of bands per field */
+    public int getBands() {
+        return bands;
+    }
+
+    /** Returns the number of hashes per band */
+    public int getRows() {
+        return rows;
+    }
+
+    /** Returns the number of media in the index */
+    public int getSize() {
+        return keys.size();
+    }
+
+    /** Returns the probability that two fields with a given bigram similarity share a bucket */
+    public double getCandidateProbability(double similarity) {
+        return 1 - Math.pow(1 - Math.pow(similarity, rows), bands);
+    }
+
+    /** Adds a media to the buckets of its name, genre and creator */
+    public void add(Media m) {
+        if (keys.containsKey(m)) {
+            return;
+        }
+
+        long[] mediaKeys = createKeys(m);
+        keys.put(m, mediaKeys);
+        for (long key : mediaKeys) {
+            buckets.computeIfAbsent(key, k -> new ArrayList<>(2)).add(m);
+        }
+    }
+
+    /** Removes a media from its buckets */
+    public void remove(Media m) {
+        long[] mediaKeys = keys.remove(m);
+        if (mediaKeys == null) {
+            return;
+        }
+
+        for (long key : mediaKeys) {
+            ArrayList<Media> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.removeIf(other -> other == m);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    /** Removes all media from the index */
+    public void clear() {
+        buckets.clear();
+        keys.clear();
+    }
+
+    /** Returns the media that share a bucket with a media, which need not be in the index */
+    public List<Media> getCandidates(Media m) {
+        long[] mediaKeys = keys.get(m);
+        if (mediaKeys == null) {
+            mediaKeys = createKeys(m);
+        }
+
+        IdentityHashMap<Media, Boolean> seen = new IdentityHashMap<>();
+        seen.put(m, Boolean.TRUE);
+
+        ArrayList<Media> candidates = new ArrayList<>();
+        for (long key : mediaKeys) {
+            ArrayList<Media> bucket = buckets.get(key);
+            if (bucket != null) {
+                for (Media other : bucket) {
+                    if (seen.put(other, Boolean.TRUE) == null) {
+                        candidates.add(other);
+                    }
+                }
+            }
+        }
+
+        return candidates;
+    }
+
+    /** Returns the bucket keys of a media: one per band of each non-blank field */
+    private long[] createKeys(Media m) {
+        BigramSignature[] fields = {m.getNameSignature(), m.getGenreSignature(), m.getCreatorSignature()};
+
+        long[] mediaKeys = new long[fields.length * bands];
+        int size = 0;
+        for (int field = 0; field < fields.length; field++) {
+            if (fields[field] == null || fields[field].getText().isBlank()) {
+                continue; // a blank field is not similar to anything
+            }
+
+            int[] signature = createSignature(fields[field]);
+            for (int band = 0; band < bands; band++) {
+                // Fields and bands never share buckets, so a key covers one band of one field
+                long key = mix(field * (long) bands + band);
+                for (int row = 0; row < rows; row++) {
+                    key = mix(key * 31 + signature[band * rows + row]);
+                }
+                mediaKeys[size++] = key;
+            }
+        }
+
+        return size == mediaKeys.length ? mediaKeys : Arrays.copyOf(mediaKeys, size);
+    }
+
+    /** Returns the MinHash signature of a bigram set: the smallest hash of any bigram under
+     *  each hash function. Two signatures agree at an index with a probability equal to the
+     *  Jaccard similarity of the sets. */
+    private int[] createSignature(BigramSignature s) {
+        int[] signature = new int[seeds.length];
+
+        if (s.getSize() == 0) {
+            // Strings of one character have no bigrams and are compared by that character
+            int element = 0x80000000 | s.getText().charAt(0);
+            for (int i = 0; i < seeds.length; i++) {
+                signature[i] = (int) mix(element ^ seeds[i]);
+            }
+            return signature;
+        }
+
+        for (int i = 0; i < seeds.length; i++) {
+            long min = Long.MAX_VALUE;
+            for (int b = 0; b < s.getSize(); b++) {
+                long hash = mix(s.getBigram(b) ^ seeds[i]);
+                if (hash < min) {
+                    min = hash;
+                }
+            }
+            signature[i] = (int) (min ^ (min >>> 32));
+        }
+
+        return signature;
+    }
+
+    /** Scrambles the bits of a value (the MurmurHash3 finalizer) */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -11,8 +11,10 @@ package com.matthewsmith.medialibrary;
 import java.io.Serializable;
 
 public class Movie extends Media implements Serializable {
+    private static final long serialVersionUID = -1729663299074252983L;
     private String director;
     private int duration;
+    private transient BigramSignature directorSignature; // created when first needed
 
     public Movie(String name) {
         super(name);
@@ -37,17 +39,37 @@ public class Movie extends Media implements Serializable {
 
     public void setDirector(String director) {
         this.director = director;
+        this.directorSignature = null;
     }
 
     public void setDuration(int duration) {
         this.duration = duration;
     }
 
+    /** Returns the bigram signature of the director */
+    protected BigramSignature getDirectorSignature() {
+        if (directorSignature == null) {
+            directorSignature = new BigramSignature(director);
+        }
+        return directorSignature;
+    }
+
+    /** Returns the type of this media */
+    @Override
+    public MediaType getType() {
+        return MediaType.MOVIE;
+    }
+
+    @Override
+    protected BigramSignature getCreatorSignature() {
+        return getDirectorSignature();
+    }
+
     @Override
     public double getSimilarity(Media m) {
         double initialValue = super.getSimilarity(m) * 0.70; // initial score values are worth 70%
-        double directorValue = compareStrings(director.toLowerCase(),
-                ((Movie) m).getDirector().toLowerCase()) * 0.25; // director is worth 25% of score
+        double directorValue = getDirectorSignature().compare(
+                ((Movie) m).getDirectorSignature()) * 0.25; // director is worth 25% of score
 
         // if duration difference is >35, the duration value is 0
         int durationDifference = Math.abs(duration - ((Movie) m).getDuration());
@@ -11,7 +11,9 @@ package com.matthewsmith.medialibrary;
 import java.io.Serializable;
 
 public class Music extends Media implements Serializable {
+    private static final long serialVersionUID = -3889817009701325075L;
     private String artist;
+    private transient BigramSignature artistSignature; // created when first needed
 
     public Music(String name) {
         super(name);
@@ -30,13 +32,33 @@ public class Music extends Media implements Serializable {
 
     public void setArtist(String artist) {
         this.artist = artist;
+        this.artistSignature = null;
+    }
+
+    /** Returns the bigram signature of the artist */
+    protected BigramSignature getArtistSignature() {
+        if (artistSignature == null) {
+            artistSignature = new BigramSignature(artist);
+        }
+        return artistSignature;
+    }
+
+    /** Returns the type of this media */
+    @Override
+    public MediaType getType() {
+        return MediaType.MUSIC;
+    }
+
+    @Override
+    protected BigramSignature getCreatorSignature() {
+        return getArtistSignature();
     }
 
     @Override
     public double getSimilarity(Media m) {
         double initialValue = super.getSimilarity(m) * 0.85; // initial score values are worth 85%
-        double artistValue = compareStrings(artist.toLowerCase(),
-                ((Music) m).getArtist().toLowerCase()) * 0.15; // artist is worth 15%
+        double artistValue = getArtistSignature().compare(
+                ((Music) m).getArtistSignature()) * 0.15; // artist is worth 15%
 
         return initialValue + artistValue;
     }
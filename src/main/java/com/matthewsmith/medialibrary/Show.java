@@ -11,9 +11,11 @@ package com.matthewsmith.medialibrary;
 import java.io.Serializable;
 
 public class Show extends Media implements Serializable {
+    private static final long serialVersionUID = 733597931860464274L;
     private String creator;
     private int numSeasons;
     private int numEpisodes;
+    private transient BigramSignature creatorSignature; // created when first needed
 
     public Show(String name) {
         super(name);
@@ -44,6 +46,7 @@ public class Show extends Media implements Serializable {
 
     public void setCreator(String creator) {
         this.creator = creator;
+        this.creatorSignature = null;
     }
 
     public void setNumSeasons(int numSeasons) {
@@ -54,11 +57,26 @@ public class Show extends Media implements Serializable {
         this.numEpisodes = numEpisodes;
     }
 
+    /** Returns the type of this media */
+    @Override
+    public MediaType getType() {
+        return MediaType.SHOW;
+    }
+
+    /** Returns the bigram signature of the creator */
+    @Override
+    protected BigramSignature getCreatorSignature() {
+        if (creatorSignature == null) {
+            creatorSignature = new BigramSignature(creator);
+        }
+        return creatorSignature;
+    }
+
     @Override
     public double getSimilarity(Media m) {
         double initialValue = super.getSimilarity(m) * 0.7; // initial score values are worth 70% of score
-        double creatorValue = compareStrings(creator.toLowerCase(),
-                ((Show) m).getCreator().toLowerCase()) * 0.2; // creator is worth 20% of score
+        double creatorValue = getCreatorSignature().compare(
+                ((Show) m).getCreatorSignature()) * 0.2; // creator is worth 20% of score
 
         // if numSeasons difference is >3, the numSeasons value is 0
         int numSeasonsDifference = Math.abs(numSeasons - ((Show) m).getNumSeasons());
@@ -0,0 +1,219 @@
+// **********************************************************************************
+// Title: SimilarityEngine
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: SimilarityEngine.java
+// Description: Scores the similarity of media of one type from feature columns that
+//              are extracted once, using a table of weights for each type
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+public class SimilarityEngine {
+    private static final int NAME = 0; // text column of the names
+    private static final int GENRE = 1; // text column of the genres
+    private static final int YEAR = 0; // number column of the years
+    private static final int RATING = 1; // number column of the ratings
+    private static final int BASE_COLUMNS = 2; // text and number columns shared by all types
+    private static final double YEAR_RANGE = 20; // years further apart than this score 0
+    private static final double RATING_RANGE = 10; // highest possible rating difference
+    private final Class<?> type;
+    private final Weights weights;
+    private final int size;
+    private final BigramSignature[][] texts; // texts[column][item]
+    private final double[][] numbers; // numbers[column][item]
+
+    /** Creates an engine for an array of media of the same type with the default weights of the type */
+    public SimilarityEngine(Media[] items) {
+        this(items, items.length == 0 ? Weights.getDefault(Media.class) : Weights.getDefault(items[0].getClass()));
+    }
+
+    /** Creates an engine for an array of media of the same type with the specified weights */
+    private SimilarityEngine(Media[] items, Weights weights) {
+        this.type = items.length == 0 ? Media.class : items[0].getClass();
+        this.weights = weights;
+        this.size = items.length;
+
+        int numTexts = BASE_COLUMNS + getTextFields(type);
+        int numNumbers = BASE_COLUMNS + getNumberFields(type);
+        if (weights.textWeights.length != numTexts - BASE_COLUMNS
+                || weights.numberWeights.length != numNumbers - BASE_COLUMNS) {
+            throw new IllegalArgumentException("Weights do not match the fields of " + type.getSimpleName());
+        }
+
+        this.texts = new BigramSignature[numTexts][size];
+        this.numbers = new double[numNumbers][size];
+        for (int i = 0; i < size; i++) {
+            if (items[i].getClass() != type) {
+                throw new IllegalArgumentException("Media must be of the same type: " +
+                        type.getSimpleName() + ", " + items[i].getClass().getSimpleName());
+            }
+
+            BigramSignature[] itemTexts = extractTexts(items[i]);
+            for (int c = 0; c < numTexts; c++) {
+                texts[c][i] = itemTexts[c];
+            }
+
+            double[] itemNumbers = extractNumbers(items[i]);
+            for (int c = 0; c < numNumbers; c++) {
+                numbers[c][i] = itemNumbers[c];
+            }
+        }
+    }
+
+    /** Returns the number of media in the engine */
+    public int getSize() {
+        return size;
+    }
+
+    /** Returns the similarity of the media at two indexes */
+    public double score(int i, int j) {
+        return combine(texts, numbers, i, j);
+    }
+
+    /** Scores a media of the same type, which need not be in the engine, against every media */
+    public void scoreAll(Media m, double[] scores) {
+        if (m.getClass() != type) {
+            throw new IllegalArgumentException("Media must be of type " + type.getSimpleName());
+        }
+
+        // Store the query as a one-row table so scoring can read it the same way
+        BigramSignature[] mediaTexts = extractTexts(m);
+        double[] mediaNumbers = extractNumbers(m);
+        BigramSignature[][] queryTexts = new BigramSignature[texts.length][];
+        double[][] queryNumbers = new double[numbers.length][];
+        for (int c = 0; c < texts.length; c++) {
+            queryTexts[c] = new BigramSignature[] {mediaTexts[c]};
+        }
+        for (int c = 0; c < numbers.length; c++) {
+            queryNumbers[c] = new double[] {mediaNumbers[c]};
+        }
+
+        for (int j = 0; j < size; j++) {
+            scores[j] = combine(queryTexts, queryNumbers, 0, j);
+        }
+    }
+
+    /** Scores item q of a query table against item j of this engine, adding up the weighted
+     *  features in the same order as Media.getSimilarity and its overrides so the default
+     *  weights give exactly the same scores */
+    private double combine(BigramSignature[][] queryTexts, double[][] queryNumbers, int q, int j) {
+        double base = 0;
+        base += queryTexts[NAME][q].compare(texts[NAME][j]) * weights.name;
+        base += queryTexts[GENRE][q].compare(texts[GENRE][j]) * weights.genre;
+        base += scoreNumber(queryNumbers[YEAR][q], numbers[YEAR][j], YEAR_RANGE, weights.year);
+        base += scoreNumber(queryNumbers[RATING][q], numbers[RATING][j], RATING_RANGE, weights.rating);
+
+        double score = base * weights.baseShare;
+        for (int c = BASE_COLUMNS; c < texts.length; c++) {
+            score += queryTexts[c][q].compare(texts[c][j]) * weights.textWeights[c - BASE_COLUMNS];
+        }
+        for (int c = BASE_COLUMNS; c < numbers.length; c++) {
+            score += scoreNumber(queryNumbers[c][q], numbers[c][j],
+                    weights.numberRanges[c - BASE_COLUMNS], weights.numberWeights[c - BASE_COLUMNS]);
+        }
+
+        return score;
+    }
+
+    /** Scores two numbers by how close they are; numbers further apart than the range score 0 */
+    private static double scoreNumber(double a, double b, double range, double weight) {
+        double difference = Math.abs(a - b);
+        return difference > range ? 0 : (1 - (difference / range)) * weight;
+    }
+
+    /** Returns the number of text fields a type has in addition to name and genre */
+    private static int getTextFields(Class<?> type) {
+        if (type == Game.class) {
+            return 2;
+        } else if (type == Movie.class || type == Show.class || type == Music.class || type == Book.class) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /** Returns the number of number fields a type has in addition to year and rating */
+    private static int getNumberFields(Class<?> type) {
+        if (type == Show.class) {
+            return 2;
+        } else if (type == Movie.class || type == Game.class) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /** Returns the text features of a media: name, genre, then the fields of its type */
+    private static BigramSignature[] extractTexts(Media m) {
+        BigramSignature name = m.getNameSignature();
+        BigramSignature genre = m.getGenreSignature();
+
+        if (m instanceof Game) {
+            Game game = (Game) m;
+            return new BigramSignature[] {name, genre, game.getDeveloperSignature(), game.getConsoleSignature()};
+        } else if (m.getCreatorSignature() != null) {
+            return new BigramSignature[] {name, genre, m.getCreatorSignature()};
+        }
+        return new BigramSignature[] {name, genre};
+    }
+
+    /** Returns the number features of a media: year, rating, then the fields of its type */
+    private static double[] extractNumbers(Media m) {
+        if (m instanceof Movie) {
+            return new double[] {m.getYear(), m.getRating(), ((Movie) m).getDuration()};
+        } else if (m instanceof Show) {
+            Show show = (Show) m;
+            return new double[] {m.getYear(), m.getRating(), show.getNumSeasons(), show.getNumEpisodes()};
+        } else if (m instanceof Game) {
+            return new double[] {m.getYear(), m.getRating(), ((Game) m).getNumPlayers()};
+        }
+        return new double[] {m.getYear(), m.getRating()};
+    }
+
+    /** The weight of each feature in a similarity score */
+    public static class Weights {
+        private final double name;
+        private final double genre;
+        private final double year;
+        private final double rating;
+        private final double baseShare; // share of the score taken by name, genre, year and rating
+        private final double[] textWeights; // weights of the text fields of the type
+        private final double[] numberWeights; // weights of the number fields of the type
+        private final double[] numberRanges; // differences at which number fields score 0
+
+        /** Creates weights for the fields shared by all media and the fields of one type */
+        private Weights(double name, double genre, double year, double rating, double baseShare,
+                       double[] textWeights, double[] numberWeights, double[] numberRanges) {
+            if (numberWeights.length != numberRanges.length) {
+                throw new IllegalArgumentException("Each number field needs a weight and a range");
+            }
+
+            this.name = name;
+            this.genre = genre;
+            this.year = year;
+            this.rating = rating;
+            this.baseShare = baseShare;
+            this.textWeights = textWeights.clone();
+            this.numberWeights = numberWeights.clone();
+            this.numberRanges = numberRanges.clone();
+        }
+
+        /** Returns the weights used by getSimilarity for a type of media */
+        public static Weights getDefault(Class<?> type) {
+            double[] none = {};
+
+            if (type == Movie.class) { // director, duration
+                return new Weights(0.15, 0.55, 0.2, 0.1, 0.70, new double[] {0.25},
+                        new double[] {0.05}, new double[] {35});
+            } else if (type == Show.class) { // creator, seasons, episodes
+                return new Weights(0.15, 0.55, 0.2, 0.1, 0.7, new double[] {0.2},
+                        new double[] {0.05, 0.05}, new double[] {3, 20});
+            } else if (type == Game.class) { // developer, console, players
+                return new Weights(0.15, 0.55, 0.2, 0.1, 0.7, new double[] {0.15, 0.1},
+                        new double[] {0.05}, new double[] {2});
+            } else if (type == Music.class || type == Book.class) { // artist or author
+                return new Weights(0.15, 0.55, 0.2, 0.1, 0.85, new double[] {0.15}, none, none);
+            }
+            return new Weights(0.15, 0.55, 0.2, 0.1, 1, none, none, none);
+        }
+    }
+}
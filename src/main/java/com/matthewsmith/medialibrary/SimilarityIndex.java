@@ -0,0 +1,500 @@
+// **********************************************************************************
+// Title: SimilarityIndex
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: SimilarityIndex.java
+// Description: Keeps the k most similar media of each media in a library, updating
+//              only the affected lists when the library changes, and caches a graph of
+//              each type; large types only compare media that share a MinHash bucket
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+public class SimilarityIndex implements Library.Listener<Media> {
+    public static final int DEFAULT_K = 10; // default number of neighbors kept for each media
+    public static final int CANDIDATE_THRESHOLD = 2000; // types with more media use MinHash candidates
+    private final Library<Media> library;
+    private final int k;
+    private final int bands; // MinHash bands per field
+    private final int rowsPerBand; // MinHash hashes per band
+    private final HashMap<Class<?>, Partition> partitions = new HashMap<>();
+    private final HashMap<Class<?>, Integer> modCounts = new HashMap<>(); // changes to each type, never reset
+    private int modCount = 0; // changes to any type, including replacing the whole library
+
+    /** Creates an index of the 10 most similar media of each media in a library */
+    public SimilarityIndex(Library<Media> library) {
+        this(library, DEFAULT_K);
+    }
+
+    /** Creates an index of the k most similar media of each media in a library */
+    public SimilarityIndex(Library<Media> library, int k) {
+        this(library, k, MinHashIndex.DEFAULT_BANDS, MinHashIndex.DEFAULT_ROWS);
+    }
+
+    /** Creates an index of the k most similar media of each media in a library, finding the
+     *  candidates of large types with MinHash bands; more bands give more accurate neighbors */
+    public SimilarityIndex(Library<Media> library, int k, int bands, int rows) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+
+        this.library = library;
+        this.k = k;
+        this.bands = bands;
+        this.rowsPerBand = rows;
+        library.addListener(this);
+    }
+
+    /** Returns the number of neighbors kept for each media */
+    public int getK() {
+        return k;
+    }
+
+    /** Returns the media of the same type most similar to a media, most similar first */
+    public List<Neighbor> getNeighbors(Media m) {
+        return withRows(m.getClass(), partition -> {
+            ArrayList<Neighbor> row = partition.rows.get(m);
+            if (row == null) {
+                row = partition.computeRow(m); // media is not in the library
+            }
+
+            return Collections.unmodifiableList(new ArrayList<>(row));
+        });
+    }
+
+    /** Finds the neighbors of every media of a type before they are looked up, stopping early if
+     *  isCancelled returns true; returns true if the neighbors were found */
+    public boolean prepare(Class<?> type, BooleanSupplier isCancelled) {
+        return withRows(type, partition -> true, isCancelled) != null;
+    }
+
+    /** Returns the neighbors of a media if they have already been found, or null if finding them
+     *  would mean scoring every pair of its type */
+    public List<Neighbor> getCachedNeighbors(Media m) {
+        return withPartition(m.getClass(), partition -> {
+            ArrayList<Neighbor> row = partition.rows == null ? null : partition.rows.get(m);
+            return row == null ? null : Collections.unmodifiableList(new ArrayList<>(row));
+        });
+    }
+
+    /** Returns the media that may be neighbors of a media, including the media itself if it is in
+     *  the library; scoring each of them finds the same neighbors as getNeighbors */
+    public List<Media> getCandidates(Media m) {
+        return withPartition(m.getClass(), partition -> new ArrayList<>(partition.getCandidates(m)));
+    }
+
+    /** Returns the number of times media of a type have been added or removed since the index was created */
+    public synchronized int getModCount(Class<?> type) {
+        return modCounts.getOrDefault(type, 0);
+    }
+
+    /** Returns a frozen graph of the media of a type, with an edge from each media to each of
+     *  its neighbors weighted 1 - similarity. The graph is cached until the type changes. */
+    public WeightedGraph<Media> getGraph(Class<?> type) {
+        return getGraph(type, 0);
+    }
+
+    /** Returns a frozen graph of the media of a type like getGraph, keeping only the edges to
+     *  the top-k neighbors with a similarity of at least minSimilarity, so the graph has at most
+     *  k edges per media however many pairs pass the threshold */
+    public WeightedGraph<Media> getGraph(Class<?> type, double minSimilarity) {
+        return withRows(type, partition -> {
+            int typeModCount = getModCount(type);
+            if (partition.graph == null || partition.graphModCount != typeModCount
+                    || partition.graphMinSimilarity != minSimilarity) {
+                partition.graph = partition.createGraph(minSimilarity);
+                partition.graphModCount = typeModCount;
+                partition.graphMinSimilarity = minSimilarity;
+            }
+
+            return partition.graph;
+        });
+    }
+
+    /** Returns the chain of most similar media leading from one media to another of the same type,
+     *  starting with from and ending with to, or an empty list if no chain joins them */
+    public List<Media> getPath(Media from, Media to) {
+        if (from.getClass() != to.getClass()) {
+            return Collections.emptyList();
+        }
+
+        WeightedGraph<Media> graph = getGraph(from.getClass());
+        int source = graph.getIndex(from);
+        int target = graph.getIndex(to);
+        if (source == -1 || target == -1) {
+            return Collections.emptyList();
+        }
+
+        WeightedGraph<Media>.ShortestPathTree tree = graph.getShortestPath(source, target);
+        if (tree.getCost(target) == Double.POSITIVE_INFINITY) {
+            return Collections.emptyList();
+        }
+
+        List<Media> path = tree.getPath(target); // from target back to source
+        Collections.reverse(path);
+        return path;
+    }
+
+    /** Groups the media of a type into collections of related media: media are in the same
+     *  collection if a chain of neighbors with a similarity of at least minSimilarity joins them */
+    public List<List<Media>> getClusters(Class<?> type, double minSimilarity) {
+        return getGraph(type, minSimilarity).getClusters(1 - minSimilarity);
+    }
+
+    @Override
+    public synchronized void elementAdded(Media m) {
+        modCount++;
+        modCounts.merge(m.getClass(), 1, Integer::sum);
+        Partition partition = partitions.get(m.getClass());
+        if (partition != null) { // partitions that are not loaded yet are read from the library later
+            partition.add(m);
+        }
+    }
+
+    @Override
+    public synchronized void elementRemoved(Media m) {
+        modCount++;
+        modCounts.merge(m.getClass(), 1, Integer::sum);
+        Partition partition = partitions.get(m.getClass());
+        if (partition != null) {
+            partition.remove(m);
+        }
+    }
+
+    @Override
+    public synchronized void elementsReplaced() {
+        modCount++;
+        modCounts.replaceAll((type, count) -> count + 1);
+        partitions.clear();
+    }
+
+    /** Runs a lookup on the partition of a type while holding the lock */
+    private <T> T withPartition(Class<?> type, Function<Partition, T> lookup) {
+        while (true) {
+            Partition partition = loadPartition(type);
+            synchronized (this) {
+                if (partitions.get(type) == partition) { // not replaced since it was loaded
+                    return lookup.apply(partition);
+                }
+            }
+        }
+    }
+
+    /** Runs a lookup on the partition of a type while holding the lock, first finding the
+     *  neighbors of every media of the type if needed. Pairs are scored without the lock, so
+     *  that changes to the library are not blocked, and scored again if the type changed. */
+    private <T> T withRows(Class<?> type, Function<Partition, T> lookup) {
+        return withRows(type, lookup, () -> false);
+    }
+
+    /** Runs a lookup like withRows, but stops finding neighbors and returns null once
+     *  isCancelled returns true */
+    private <T> T withRows(Class<?> type, Function<Partition, T> lookup, BooleanSupplier isCancelled) {
+        while (true) {
+            Partition partition = loadPartition(type);
+            Partition built = new Partition();
+            int typeModCount;
+            synchronized (this) {
+                if (partitions.get(type) != partition) {
+                    continue;
+                }
+                if (partition.rows != null) {
+                    return lookup.apply(partition);
+                }
+
+                built.items.addAll(partition.items);
+                typeModCount = getModCount(type);
+            }
+
+            if (!built.build(isCancelled)) {
+                return null;
+            }
+
+            synchronized (this) {
+                if (partitions.get(type) == partition && getModCount(type) == typeModCount) {
+                    partitions.put(type, built);
+                }
+            }
+        }
+    }
+
+    /** Returns the partition of a type of media, loading it from a copy of the library's list of
+     *  that type the first time it is needed. The library holds its lock while it notifies this
+     *  index, so the copy is taken without holding this index's lock; callers must check that the
+     *  partition has not been replaced once they hold the lock. */
+    private Partition loadPartition(Class<?> type) {
+        while (true) {
+            int loadModCount;
+            synchronized (this) {
+                Partition partition = partitions.get(type);
+                if (partition != null) {
+                    return partition;
+                }
+                loadModCount = modCount;
+            }
+
+            List<Media> media = library.getMedia(MediaType.of(type));
+
+            synchronized (this) {
+                Partition partition = partitions.get(type);
+                if (partition == null && modCount == loadModCount) { // library did not change while copying
+                    partition = new Partition();
+                    for (Media m : media) {
+                        if (m.getClass() == type) { // OTHER holds plain media and any other classes
+                            partition.items.add(m);
+                        }
+                    }
+                    partitions.put(type, partition);
+                }
+                if (partition != null) {
+                    return partition;
+                }
+            }
+        }
+    }
+
+    /** Inserts a neighbor into a row sorted by descending similarity, keeping at most k neighbors;
+     *  returns true if the row changed */
+    static boolean offer(ArrayList<Neighbor> row, int k, Media m, double similarity) {
+        if (row.size() == k && similarity <= row.get(k - 1).similarity) {
+            return false; // not more similar than any neighbor in a full row
+        }
+
+        // Find index of first neighbor that is less similar
+        int index = row.size();
+        while (index > 0 && row.get(index - 1).similarity < similarity) {
+            index--;
+        }
+
+        row.add(index, new Neighbor(m, similarity));
+        if (row.size() > k) {
+            row.remove(k);
+        }
+        return true;
+    }
+
+    /** Scores a media against a list of media of its type with a similarity engine, returning
+     *  the score of each media in the list at the same index */
+    static double[] score(Media m, List<Media> others) {
+        double[] scores = new double[others.size()];
+        if (!others.isEmpty()) {
+            new SimilarityEngine(others.toArray(new Media[0])).scoreAll(m, scores);
+        }
+        return scores;
+    }
+
+    /** Returns true if a row has a media as a neighbor */
+    private static boolean contains(ArrayList<Neighbor> row, Media m) {
+        for (Neighbor neighbor : row) {
+            if (neighbor.media == m) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if two media should not be neighbors of each other */
+    static boolean isSame(Media m1, Media m2) {
+        return m1 == m2 || m1.equals(m2);
+    }
+
+    /** All media of one type, and the neighbors of each media once they are needed */
+    private class Partition {
+        private final ArrayList<Media> items = new ArrayList<>();
+        private IdentityHashMap<Media, ArrayList<Neighbor>> rows; // null until the first lookup
+        private MinHashIndex candidates; // null unless the type is large
+        private WeightedGraph<Media> graph; // null until the first graph lookup
+        private int graphModCount; // mod count of the type when the graph was created
+        private double graphMinSimilarity; // lowest similarity of an edge in the graph
+
+        /** Finds the neighbors of every media of this type; returns false, leaving the rows
+         *  unset, if isCancelled returns true first */
+        private boolean build(BooleanSupplier isCancelled) {
+            if (items.size() > CANDIDATE_THRESHOLD) {
+                return buildFromCandidates(isCancelled);
+            }
+
+            // Score each pair once in parallel
+            Media[] array = items.toArray(new Media[0]);
+            ArrayList<ArrayList<Neighbor>> rowList = new ArrayList<>(array.length);
+            for (int i = 0; i < array.length; i++) {
+                rowList.add(new ArrayList<>(k + 1));
+            }
+
+            // A pair's score is offered to both rows; rows are locked because tiles that share
+            // a row may be scored at the same time
+            SimilarityMatrix.forEachPair(array, (i, j, similarity) -> {
+                if (!isSame(array[i], array[j])) {
+                    ArrayList<Neighbor> row1 = rowList.get(i);
+                    synchronized (row1) {
+                        offer(row1, k, array[j], similarity);
+                    }
+
+                    ArrayList<Neighbor> row2 = rowList.get(j);
+                    synchronized (row2) {
+                        offer(row2, k, array[i], similarity);
+                    }
+                }
+            }, isCancelled);
+
+            if (isCancelled.getAsBoolean()) {
+                return false; // some tiles were skipped
+            }
+
+            rows = new IdentityHashMap<>();
+            for (int i = 0; i < array.length; i++) {
+                rows.put(array[i], rowList.get(i));
+            }
+            return true;
+        }
+
+        /** Finds the neighbors of every media by scoring only the media that share a bucket */
+        private boolean buildFromCandidates(BooleanSupplier isCancelled) {
+            candidates = new MinHashIndex(bands, rowsPerBand);
+            for (Media m : items) {
+                candidates.add(m);
+            }
+
+            IdentityHashMap<Media, ArrayList<Neighbor>> builtRows = new IdentityHashMap<>();
+            for (Media m : items) {
+                if (isCancelled.getAsBoolean()) {
+                    return false;
+                }
+                builtRows.put(m, computeRow(m));
+            }
+
+            rows = builtRows;
+            return true;
+        }
+
+        /** Creates a graph from the rows, skipping neighbors less similar than minSimilarity;
+         *  an edge in either row is added in both directions */
+        private WeightedGraph<Media> createGraph(double minSimilarity) {
+            WeightedGraph.Builder<Media> builder = new WeightedGraph.Builder<>();
+            IdentityHashMap<Media, Integer> indexes = new IdentityHashMap<>();
+            for (Media m : items) {
+                indexes.put(m, builder.addVertex(m));
+            }
+
+            for (Media m : items) {
+                int i = indexes.get(m);
+                for (Neighbor neighbor : rows.get(m)) {
+                    if (neighbor.similarity < minSimilarity) {
+                        continue;
+                    }
+
+                    int j = indexes.get(neighbor.media);
+                    if (i < j || !contains(rows.get(neighbor.media), m)) {
+                        builder.addUndirectedEdge(i, j, 1 - neighbor.similarity);
+                    }
+                }
+            }
+
+            return builder.build();
+        }
+
+        /** Returns the media of this type that may be similar to a media */
+        private List<Media> getCandidates(Media m) {
+            return candidates == null ? items : candidates.getCandidates(m);
+        }
+
+        /** Finds the k most similar media of a media by comparing it to its candidates */
+        private ArrayList<Neighbor> computeRow(Media m) {
+            List<Media> others = getCandidates(m);
+            double[] scores = score(m, others);
+
+            ArrayList<Neighbor> row = new ArrayList<>(k + 1);
+            for (int i = 0; i < scores.length; i++) {
+                if (!isSame(m, others.get(i))) {
+                    offer(row, k, others.get(i), scores[i]);
+                }
+            }
+
+            return row;
+        }
+
+        /** Adds a media, offering it to the row of every other media of this type */
+        private void add(Media m) {
+            items.add(m);
+
+            if (rows == null) {
+                return; // neighbors will be found on the first lookup
+            }
+
+            if (candidates != null) {
+                candidates.add(m);
+            }
+
+            List<Media> others = getCandidates(m);
+            double[] scores = score(m, others); // similarity is symmetric
+
+            ArrayList<Neighbor> row = new ArrayList<>(k + 1);
+            for (int i = 0; i < scores.length; i++) {
+                Media other = others.get(i);
+                if (!isSame(m, other)) {
+                    offer(row, k, other, scores[i]);
+                    offer(rows.get(other), k, m, scores[i]);
+                }
+            }
+
+            rows.put(m, row);
+        }
+
+        /** Removes a media, recomputing only the rows that contained it */
+        private void remove(Media m) {
+            for (Iterator<Media> iterator = items.iterator(); iterator.hasNext(); ) {
+                if (iterator.next() == m) {
+                    iterator.remove();
+                    break;
+                }
+            }
+
+            if (rows == null) {
+                return;
+            }
+
+            if (candidates != null) {
+                candidates.remove(m);
+            }
+
+            rows.remove(m);
+            for (Map.Entry<Media, ArrayList<Neighbor>> entry : rows.entrySet()) {
+                if (contains(entry.getValue(), m)) {
+                    entry.setValue(computeRow(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    /** A similar media and its similarity score */
+    public static class Neighbor {
+        private final Media media;
+        private final double similarity;
+
+        /** Creates a neighbor with a media and its similarity score */
+        public Neighbor(Media media, double similarity) {
+            this.media = media;
+            this.similarity = similarity;
+        }
+
+        /** Returns the similar media */
+        public Media getMedia() {
+            return media;
+        }
+
+        /** Returns the similarity score, between 0 and 1 */
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+// **********************************************************************************
+// Title: SimilarityMatrix
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: SimilarityMatrix.java
+// Description: Computes the similarity of every pair of media of one type in parallel,
+//              scoring each unordered pair only once
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+public class SimilarityMatrix {
+    private static final int TILE_SIZE = 64; // number of rows and columns in one tile
+
+    private SimilarityMatrix() {
+    }
+
+    /** Scores every unordered pair (i, j) with i < j of an array of media of the same type
+     *  once, splitting the upper triangle into tiles that are scored on all cores. The
+     *  consumer may be called from several threads at once. Tiles that have not started are
+     *  skipped once isCancelled returns true. */
+    public static void forEachPair(Media[] items, PairConsumer consumer, BooleanSupplier isCancelled) {
+        forEachPair(new SimilarityEngine(items), consumer, isCancelled);
+    }
+
+    /** Scores every unordered pair of the media in a similarity engine once, in parallel,
+     *  unless isCancelled returns true */
+    public static void forEachPair(SimilarityEngine engine, PairConsumer consumer, BooleanSupplier isCancelled) {
+        int numBlocks = (engine.getSize() + TILE_SIZE - 1) / TILE_SIZE;
+
+        // List the tiles on or above the diagonal
+        ArrayList<int[]> tiles = new ArrayList<>();
+        for (int rowBlock = 0; rowBlock < numBlocks; rowBlock++) {
+            for (int colBlock = rowBlock; colBlock < numBlocks; colBlock++) {
+                tiles.add(new int[] {rowBlock, colBlock});
+            }
+        }
+
+        BackgroundExecutor.getPool().invoke(new TileTask(engine, tiles, 0, tiles.size(), consumer, isCancelled));
+    }
+
+    /** Receives the similarity score of a pair of media */
+    @FunctionalInterface
+    public interface PairConsumer {
+        void accept(int i, int j, double similarity);
+    }
+
+    /** TileTask class for scoring a range of tiles in parallel */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final SimilarityEngine engine;
+        private final ArrayList<int[]> tiles;
+        private final int start;
+        private final int end;
+        private final PairConsumer consumer;
+        private final BooleanSupplier isCancelled; // checked before each tile is scored
+
+        public TileTask(SimilarityEngine engine, ArrayList<int[]> tiles, int start, int end,
+                        PairConsumer consumer, BooleanSupplier isCancelled) {
+            this.engine = engine;
+            this.tiles = tiles;
+            this.start = start;
+            this.end = end;
+            this.consumer = consumer;
+            this.isCancelled = isCancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (isCancelled.getAsBoolean()) {
+                return;
+            }
+
+            if (end - start == 1) {
+                scoreTile(tiles.get(start)[0], tiles.get(start)[1]);
+            } else if (end > start) {
+                int middle = (start + end) / 2;
+                invokeAll(new TileTask(engine, tiles, start, middle, consumer, isCancelled),
+                        new TileTask(engine, tiles, middle, end, consumer, isCancelled));
+            }
+        }
+
+        /** Scores the pairs of one tile; tiles on the diagonal only score pairs above it */
+        private void scoreTile(int rowBlock, int colBlock) {
+            int rowEnd = Math.min((rowBlock + 1) * TILE_SIZE, engine.getSize());
+            int colEnd = Math.min((colBlock + 1) * TILE_SIZE, engine.getSize());
+
+            for (int i = rowBlock * TILE_SIZE; i < rowEnd; i++) {
+                int colStart = rowBlock == colBlock ? i + 1 : colBlock * TILE_SIZE;
+                for (int j = colStart; j < colEnd; j++) {
+                    consumer.accept(i, j, engine.score(i, j));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+// **********************************************************************************
+// Title: TextWidthCache
+// Author: Matthew Smith
+// Course Section: CMIS202-ONL1 (Seidel) Spring 2023
+// File: TextWidthCache.java
+// Description: Measures and shortens strings in a font, keeping the laid out widths
+//              of recent strings so each is laid out by a Text node only once
+// **********************************************************************************
+
+package com.matthewsmith.medialibrary;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.HashMap;
+
+public class TextWidthCache {
+    private static final int WIDTH_CACHE_SIZE = 1024; // number of laid out string widths kept
+    private static final HashMap<Font, TextWidthCache> caches = new HashMap<>();
+    private final Font font;
+    private final LRUCache<String, Double> widths = new LRUCache<>(WIDTH_CACHE_SIZE); // widths of laid out strings
+    private final ThreadLocal<Text> text; // measures strings; nodes that are not shown can be used on any thread
+
+    /** Creates an empty cache for a font */
+    private TextWidthCache(Font font) {
+        this.font = font;
+        text = ThreadLocal.withInitial(() -> {
+            Text t = new Text();
+            t.setFont(font);
+            return t;
+        });
+    }
+
+    /** Returns the cache of a font, creating it the first time the font is measured */
+    public static synchronized TextWidthCache get(Font font) {
+        return caches.computeIfAbsent(font, TextWidthCache::new);
+    }
+
+    /** Returns the font measured by this cache */
+    public Font getFont() {
+        return font;
+    }
+
+    /** Returns the width of a string laid out in this font, caching the widths of recent strings */
+    public double getWidth(String s) {
+        Double width = widths.get(s);
+        if (width == null) {
+            Text t = text.get();
+            t.setText(s);
+            width = t.getBoundsInLocal().getWidth();
+            widths.put(s, width);
+        }
+        return width;
+    }
+
+    /** Shortens a string that is wider than a number of pixels, keeping the share of its characters
+     *  that fits and adding ellipses; strings that fit are returned unchanged */
+    public String shorten(String s, int pixels) {
+        double length = getWidth(s);
+
+        if (pixels < length) {
+            // Calculate the percentage (between 0 and 1) of the name that can fit, multiply by
+            // the length of the string to find the maximum number of characters that fit
+            int limit = (int) Math.floor((pixels / length) * s.length());
+            return s.substring(0, Math.min(limit, s.length())) + "...";
+        } else {
+            return s;
+        }
+    }
+}
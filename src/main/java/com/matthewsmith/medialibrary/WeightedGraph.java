@@ -11,16 +11,49 @@ package com.matthewsmith.medialibrary;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 public class WeightedGraph<V> {
+    private static final int BFS_CHUNK_SIZE = 1024; // vertices of a level scanned by one task
     protected List<V> vertices = new ArrayList<>();
-    protected List<List<Edge>> neighbors = new ArrayList<>();
+    protected List<List<Edge>> neighbors = new ArrayList<>(); // null once the graph is frozen
+    private final HashMap<V, Integer> indexes = new HashMap<>(); // index of each vertex in vertices
+
+    // Compressed sparse row (CSR) form of the edges, used by all traversals and algorithms.
+    // The edges of vertex u are stored at indexes offsets[u] to offsets[u + 1] - 1 of
+    // targets and weights. Arrays are null while they need to be rebuilt from neighbors.
+    private int[] offsets;
+    private int[] targets;
+    private double[] weights;
+    private boolean frozen = false; // true if the graph cannot change and its rows are sorted by target
+
+    // CSR form of the reversed edges, used to search backward from a target; rebuilt when
+    // the CSR arrays it was created from are replaced. Frozen graphs create it when they are
+    // frozen, so searching them never writes to the graph and they can be searched by
+    // several threads at once.
+    private int[] reverseOffsets;
+    private int[] reverseTargets;
+    private double[] reverseWeights;
+    private int[] reversedOffsets; // offsets the reversed arrays were created from
 
     /** Creates an empty weighted graph */
     public WeightedGraph() {
     }
 
+    /** Creates a frozen weighted graph from vertices and CSR arrays with rows sorted by target */
+    private WeightedGraph(List<V> vertices, int[] offsets, int[] targets, double[] weights) {
+        this.vertices = vertices;
+        this.neighbors = null;
+        rebuildIndexes();
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.frozen = true;
+        compactReverse();
+    }
+
     /** Creates a weighted graph from an arrays of vertices and edges */
     public WeightedGraph(V[] vertices, int[][] edges) {
         createWeightedGraph(java.util.Arrays.asList(vertices), edges);
@@ -34,6 +67,7 @@ public class WeightedGraph<V> {
     /** Creates adjacency lists for each vertex */
     private void createWeightedGraph(List<V> vertices, int[][] edges) {
         this.vertices = vertices;
+        rebuildIndexes();
 
         for (int i = 0; i < vertices.size(); i++) {
             neighbors.add(new ArrayList<>()); // Create a list for vertices
@@ -47,6 +81,7 @@ public class WeightedGraph<V> {
     /** Creates adjacency lists for each vertex */
     private void createWeightedGraph(List<V> vertices, List<Edge> edges) {
         this.vertices = vertices;
+        rebuildIndexes();
 
         for (int i = 0; i < vertices.size(); i++) {
             neighbors.add(new ArrayList<>()); // Create a list for vertices
@@ -72,16 +107,45 @@ public class WeightedGraph<V> {
         return vertices.get(index);
     }
 
-    /** Returns index of a specified vertex */
+    /** Returns index of a specified vertex, or -1 if it is not in the graph */
     public int getIndex(V v) {
-        return vertices.indexOf(v);
+        Integer index = indexes.get(v);
+        return index == null ? -1 : index;
+    }
+
+    /** Maps every vertex to its index; the first index is kept for duplicate vertices */
+    private void rebuildIndexes() {
+        indexes.clear();
+        for (int i = 0; i < vertices.size(); i++) {
+            indexes.putIfAbsent(vertices.get(i), i);
+        }
     }
 
     /** Returns weight of a specified edge */
     public double getWeight(int u, int v) throws Exception {
-        for (Edge edge : neighbors.get(u)) {
-            if (edge.v == v) {
-                return edge.weight;
+        compact();
+
+        if (frozen) {
+            // Binary search for the first edge to v in u's sorted row
+            int low = offsets[u];
+            int high = offsets[u + 1];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (targets[mid] < v) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            if (low < offsets[u + 1] && targets[low] == v) {
+                return weights[low];
+            }
+        } else {
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                if (targets[i] == v) {
+                    return weights[i];
+                }
             }
         }
 
@@ -90,23 +154,39 @@ public class WeightedGraph<V> {
 
     /** Returns list of neighbors of vertex of the specified index */
     public List<Integer> getNeighbors(int index) {
-        List<Integer> result = new ArrayList<>();
-        for (Edge e: neighbors.get(index))
-            result.add(e.v);
+        compact();
+        List<Integer> result = new ArrayList<>(getDegree(index));
+        for (int i = offsets[index]; i < offsets[index + 1]; i++)
+            result.add(targets[i]);
 
         return result;
     }
 
     /** Returns degree of a specified vertex */
     public int getDegree(int v) {
-        return neighbors.get(v).size();
+        compact();
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /** Returns the number of edges in the graph */
+    public int getNumberOfEdges() {
+        compact();
+        return offsets[getSize()];
+    }
+
+    /** Returns true if the graph is frozen and can no longer be changed */
+    public boolean isFrozen() {
+        return frozen;
     }
 
     /** Adds a vertex to the graph */
     public boolean addVertex(V vertex) {
-        if (!vertices.contains(vertex)) {
+        checkNotFrozen();
+        if (!indexes.containsKey(vertex)) {
+            indexes.put(vertex, vertices.size());
             vertices.add(vertex);
             neighbors.add(new ArrayList<>());
+            offsets = null; // CSR arrays must be rebuilt
             return true;
         }
         else {
@@ -114,6 +194,39 @@ public class WeightedGraph<V> {
         }
     }
 
+    /** Removes a vertex and its edges from the graph; returns false if the vertex is not in the graph */
+    public boolean removeVertex(V vertex) {
+        int index = getIndex(vertex);
+        if (index < 0) {
+            return false;
+        }
+
+        removeVertex(index);
+        return true;
+    }
+
+    /** Removes the vertex at an index and its edges; every later vertex moves down one index */
+    public void removeVertex(int index) {
+        checkNotFrozen();
+        if (index < 0 || index > getSize() - 1)
+            throw new IllegalArgumentException("No such index: " + index);
+
+        vertices.remove(index);
+        neighbors.remove(index);
+
+        // Remove edges into the vertex and renumber the remaining edges
+        for (List<Edge> list : neighbors) {
+            list.removeIf(e -> e.v == index);
+            for (Edge e : list) {
+                if (e.u > index) e.u--;
+                if (e.v > index) e.v--;
+            }
+        }
+
+        rebuildIndexes();
+        offsets = null; // CSR arrays must be rebuilt
+    }
+
     /** Adds an edge to the graph */
     public boolean addEdge(int u, int v, double weight) {
         return addEdge(new Edge(u, v, weight));
@@ -121,6 +234,7 @@ public class WeightedGraph<V> {
 
     /** Adds an edge to the graph */
     public boolean addEdge(Edge e) {
+        checkNotFrozen();
         if (e.u < 0 || e.u > getSize() - 1)
             throw new IllegalArgumentException("No such index: " + e.u);
 
@@ -129,6 +243,7 @@ public class WeightedGraph<V> {
 
         if (!neighbors.get(e.u).contains(e)) {
             neighbors.get(e.u).add(e);
+            offsets = null; // CSR arrays must be rebuilt
             return true;
         }
         else {
@@ -138,12 +253,107 @@ public class WeightedGraph<V> {
 
     /** Clears the graph */
     public void clear() {
+        checkNotFrozen();
         vertices.clear();
         neighbors.clear();
+        indexes.clear();
+        offsets = null;
+    }
+
+    /** Converts the graph to a frozen CSR form with each row sorted by target, so edges can
+     *  be found by binary search; the graph can no longer be changed afterwards */
+    public WeightedGraph<V> freeze() {
+        if (!frozen) {
+            compact();
+            sortRows(offsets, targets, weights, getSize());
+            compactReverse();
+            neighbors = null;
+            frozen = true;
+        }
+
+        return this;
+    }
+
+    /** Throws an exception if the graph is frozen */
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Graph is frozen");
+        }
+    }
+
+    /** Rebuilds the CSR arrays from the adjacency lists if they are out of date */
+    private void compact() {
+        if (offsets != null) {
+            return;
+        }
+
+        int[] newOffsets = new int[getSize() + 1];
+        for (int u = 0; u < getSize(); u++) {
+            newOffsets[u + 1] = newOffsets[u] + neighbors.get(u).size();
+        }
+
+        int[] newTargets = new int[newOffsets[getSize()]];
+        double[] newWeights = new double[newOffsets[getSize()]];
+        for (int u = 0; u < getSize(); u++) {
+            int i = newOffsets[u];
+            for (Edge e : neighbors.get(u)) { // rows keep the order edges were added in
+                newTargets[i] = e.v;
+                newWeights[i] = e.weight;
+                i++;
+            }
+        }
+
+        targets = newTargets;
+        weights = newWeights;
+        offsets = newOffsets;
+    }
+
+    /** Sorts every row of CSR arrays by target; edges with the same target keep their order */
+    private static void sortRows(int[] offsets, int[] targets, double[] weights, int numVertices) {
+        int[] tempTargets = new int[targets.length];
+        double[] tempWeights = new double[weights.length];
+
+        for (int u = 0; u < numVertices; u++) {
+            int start = offsets[u];
+            int end = offsets[u + 1];
+
+            // Bottom-up merge sort of the row
+            for (int width = 1; width < end - start; width *= 2) {
+                for (int low = start; low < end - width; low += 2 * width) {
+                    int mid = low + width;
+                    int high = Math.min(low + 2 * width, end);
+                    int i = low;
+                    int j = mid;
+                    int k = low;
+
+                    while (i < mid && j < high) {
+                        if (targets[j] < targets[i]) {
+                            tempTargets[k] = targets[j];
+                            tempWeights[k++] = weights[j++];
+                        } else {
+                            tempTargets[k] = targets[i];
+                            tempWeights[k++] = weights[i++];
+                        }
+                    }
+                    while (i < mid) {
+                        tempTargets[k] = targets[i];
+                        tempWeights[k++] = weights[i++];
+                    }
+                    while (j < high) {
+                        tempTargets[k] = targets[j];
+                        tempWeights[k++] = weights[j++];
+                    }
+
+                    System.arraycopy(tempTargets, low, targets, low, high - low);
+                    System.arraycopy(tempWeights, low, weights, low, high - low);
+                }
+            }
+        }
     }
 
     /** Performs depth-first search and returns a search tree */
     public SearchTree dfs(int v) {
+        compact();
         List<Integer> searchOrder = new ArrayList<>();
         int[] parent = new int[vertices.size()];
 
@@ -153,54 +363,126 @@ public class WeightedGraph<V> {
         // Mark visited vertices
         boolean[] isVisited = new boolean[vertices.size()];
 
-        // Recursively search
-        dfs(v, parent, searchOrder, isVisited);
-
-        // Return a search tree
-        return new SearchTree(v, parent, searchOrder);
-    }
+        // Search with an explicit stack so long chains cannot overflow the call stack; each
+        // entry holds a vertex and the position of the next edge to follow from it
+        int[] stack = new int[vertices.size()];
+        int[] nextEdge = new int[vertices.size()];
+        int top = 0;
 
-    /** Recursive method for DFS search */
-    private void dfs(int v, int[] parent, List<Integer> searchOrder, boolean[] isVisited) {
-        // Store the visited vertex
         searchOrder.add(v);
         isVisited[v] = true; // Vertex v visited
+        stack[top] = v;
+        nextEdge[top++] = offsets[v];
+
+        while (top > 0) {
+            int u = stack[top - 1];
+            if (nextEdge[top - 1] == offsets[u + 1]) {
+                top--; // all edges of u followed
+                continue;
+            }
 
-        for (Edge e : neighbors.get(v)) { // Note that e.u is v
-            if (!isVisited[e.v]) { // e.v is w in Listing 28.8
-                parent[e.v] = v; // The parent of w is v
-                dfs(e.v, parent, searchOrder, isVisited); // Recursive search
+            int w = targets[nextEdge[top - 1]++];
+            if (!isVisited[w]) {
+                parent[w] = u; // The parent of w is u
+                searchOrder.add(w);
+                isVisited[w] = true;
+                stack[top] = w;
+                nextEdge[top++] = offsets[w];
             }
         }
+
+        // Return a search tree
+        return new SearchTree(v, parent, searchOrder);
     }
 
     /** Performs a breadth-first search and returns a search tree */
     public SearchTree bfs(int v) {
-        List<Integer> searchOrder = new ArrayList<>();
+        compact();
         int[] parent = new int[vertices.size()];
 
         // Initialize parent[i] to -1
         Arrays.fill(parent, -1);
 
-        java.util.LinkedList<Integer> queue =
-                new java.util.LinkedList<>(); // list used as a queue
+        // Each vertex is enqueued at most once, so the queue is an array that also holds the
+        // search order
+        int[] queue = new int[vertices.size()];
+        int head = 0;
+        int tail = 0;
         boolean[] isVisited = new boolean[vertices.size()];
-        queue.offer(v); // Enqueue v
+        queue[tail++] = v; // Enqueue v
         isVisited[v] = true; // Mark it visited
 
-        while (!queue.isEmpty()) {
-            int u = queue.poll(); // Dequeue to u
-            searchOrder.add(u); // u searched
-            for (Edge e: neighbors.get(u)) { // Note that e.u is u
-                if (!isVisited[e.v]) { // e.v is w in Listing 28.11
-                    queue.offer(e.v); // Enqueue w
-                    parent[e.v] = u; // The parent of w is u
-                    isVisited[e.v] = true; // Mark w visited
+        while (head < tail) {
+            int u = queue[head++]; // Dequeue to u
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int w = targets[i];
+                if (!isVisited[w]) {
+                    queue[tail++] = w; // Enqueue w
+                    parent[w] = u; // The parent of w is u
+                    isVisited[w] = true; // Mark w visited
                 }
             }
         }
 
-        return new SearchTree(v, parent, searchOrder);
+        return new SearchTree(v, parent, toList(queue, tail));
+    }
+
+    /** Performs a breadth-first search one level at a time, scanning the edges of large levels
+     *  on all cores; returns the same search tree as bfs */
+    public SearchTree parallelBfs(int v) {
+        if (Runtime.getRuntime().availableProcessors() < 2) {
+            return bfs(v); // scanning in chunks only pays off with more than one core
+        }
+
+        compact();
+        int[] parent = new int[vertices.size()];
+        Arrays.fill(parent, -1);
+
+        int[] order = new int[vertices.size()]; // search order; each level follows the one before it
+        int size = 0;
+        boolean[] isVisited = new boolean[vertices.size()];
+        order[size++] = v;
+        isVisited[v] = true;
+
+        int levelStart = 0;
+        while (levelStart < size) {
+            int levelEnd = size;
+
+            // Scan the level for edges to unvisited vertices; a small level is scanned as one chunk
+            int numChunks = (levelEnd - levelStart + BFS_CHUNK_SIZE - 1) / BFS_CHUNK_SIZE;
+            int[][] found = new int[numChunks][];
+            LevelTask task = new LevelTask(order, levelStart, levelEnd, isVisited, found, 0, numChunks);
+            if (numChunks == 1) {
+                task.compute();
+            } else {
+                BackgroundExecutor.getPool().invoke(task);
+            }
+
+            // Visit the vertices in the order bfs would, so the result does not depend on timing
+            for (int[] pairs : found) {
+                for (int i = 0; i < pairs.length; i += 2) {
+                    int w = pairs[i + 1];
+                    if (!isVisited[w]) {
+                        parent[w] = pairs[i];
+                        isVisited[w] = true;
+                        order[size++] = w;
+                    }
+                }
+            }
+
+            levelStart = levelEnd;
+        }
+
+        return new SearchTree(v, parent, toList(order, size));
+    }
+
+    /** Returns the first size values of an array as a list */
+    private static List<Integer> toList(int[] values, int size) {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(values[i]);
+        }
+        return list;
     }
 
     /** Returns a minimum spanning tree rooted at vertex 0 */
@@ -210,6 +492,8 @@ public class WeightedGraph<V> {
 
     /** Returns a minimum spanning tree rooted at a specified vertex */
     public MST getMinimumSpanningTree(int startingVertex) {
+        compact();
+
         // cost[v] stores the cost by adding v to the tree
         double[] cost = new double[getSize()];
         Arrays.fill(cost, Double.POSITIVE_INFINITY); // Initial cost
@@ -220,27 +504,26 @@ public class WeightedGraph<V> {
         double totalWeight = 0; // Total weight of the tree thus far
 
         List<Integer> T = new ArrayList<>();
+        boolean[] inT = new boolean[getSize()]; // inT[v] is true if v is in T
 
-        // Expand T
-        while (T.size() < getSize()) {
-            // Find smallest cost u in V - T
-            int u = -1; // Vertex to be determined
-            double currentMinCost = Double.POSITIVE_INFINITY;
-            for (int i = 0; i < getSize(); i++) {
-                if (!T.contains(i) && cost[i] < currentMinCost) {
-                    currentMinCost = cost[i];
-                    u = i;
-                }
-            }
+        // Vertices with a finite cost that are not yet in T, ordered by cost
+        IndexedMinHeap heap = new IndexedMinHeap(cost);
+        heap.update(startingVertex);
 
-            if (u == -1) break; else T.add(u); // Add a new vertex to T
+        // Expand T
+        while (!heap.isEmpty()) {
+            int u = heap.poll(); // Smallest cost u in V - T
+            T.add(u); // Add a new vertex to T
+            inT[u] = true;
             totalWeight += cost[u]; // Add cost[u] to the tree
 
             // Adjust cost[v] for v that is adjacent to u and v in V - T
-            for (Edge e : neighbors.get(u)) {
-                if (!T.contains(e.v) && cost[e.v] > e.weight) {
-                    cost[e.v] = e.weight;
-                    parent[e.v] = u;
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int v = targets[i];
+                if (!inT[v] && cost[v] > weights[i]) {
+                    cost[v] = weights[i];
+                    parent[v] = u;
+                    heap.update(v);
                 }
             }
         } // End of while
@@ -248,8 +531,173 @@ public class WeightedGraph<V> {
         return new MST(startingVertex, parent, T, totalWeight);
     }
 
+    /** Returns a minimum spanning forest found with Kruskal's algorithm, treating every edge
+     *  as undirected; unlike getMinimumSpanningTree, it spans every component. The tree of
+     *  each component is rooted at its lowest vertex, and the forest's root is vertex 0. */
+    public MST getMinimumSpanningForest() {
+        compact();
+        int n = getSize();
+        int[] sources = getSources();
+        int[] forestEdges = getForestEdges(sources, Double.POSITIVE_INFINITY);
+
+        // (u, v) pairs of forest edges
+        int numForestEdges = forestEdges.length;
+        int[] forest = new int[2 * numForestEdges];
+        double totalWeight = 0;
+        for (int i = 0; i < numForestEdges; i++) {
+            forest[2 * i] = sources[forestEdges[i]];
+            forest[2 * i + 1] = targets[forestEdges[i]];
+            totalWeight += weights[forestEdges[i]];
+        }
+
+        // List the forest edges of each vertex in both directions
+        int[] forestOffsets = new int[n + 1];
+        for (int i = 0; i < 2 * numForestEdges; i++) {
+            forestOffsets[forest[i] + 1]++;
+        }
+        for (int u = 0; u < n; u++) {
+            forestOffsets[u + 1] += forestOffsets[u];
+        }
+        int[] forestTargets = new int[2 * numForestEdges];
+        int[] next = Arrays.copyOf(forestOffsets, n);
+        for (int i = 0; i < numForestEdges; i++) {
+            int u = forest[2 * i];
+            int v = forest[2 * i + 1];
+            forestTargets[next[u]++] = v;
+            forestTargets[next[v]++] = u;
+        }
+
+        // Root each tree at its lowest vertex with a breadth-first search
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        int[] queue = new int[n]; // also the search order
+        int tail = 0;
+        boolean[] isVisited = new boolean[n];
+        for (int root = 0; root < n; root++) {
+            if (isVisited[root]) {
+                continue;
+            }
+
+            int head = tail;
+            queue[tail++] = root;
+            isVisited[root] = true;
+            while (head < tail) {
+                int u = queue[head++];
+                for (int i = forestOffsets[u]; i < forestOffsets[u + 1]; i++) {
+                    int v = forestTargets[i];
+                    if (!isVisited[v]) {
+                        parent[v] = u;
+                        isVisited[v] = true;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+        }
+
+        return new MST(n == 0 ? -1 : 0, parent, toList(queue, tail), totalWeight);
+    }
+
+    /** Groups the vertices into clusters joined by edges with a weight of at most maxWeight,
+     *  treating every edge as undirected. These are the trees left when the heavier edges are
+     *  cut from a minimum spanning forest (single-linkage clustering). Clusters are listed in
+     *  order of their lowest vertex, and each lists its vertices in index order. */
+    public List<List<V>> getClusters(double maxWeight) {
+        compact();
+        int n = getSize();
+        int[] sources = getSources();
+
+        // Kruskal adds edges from lightest to heaviest, so stopping at maxWeight leaves the
+        // forest with its heavier edges cut; each remaining tree is a cluster
+        DisjointSets sets = new DisjointSets(n);
+        for (int e : getForestEdges(sources, maxWeight)) {
+            sets.union(sources[e], targets[e]);
+        }
+
+        List<List<V>> clusters = new ArrayList<>();
+        int[] clusterIndex = new int[n]; // index in clusters of the cluster of each set's root
+        Arrays.fill(clusterIndex, -1);
+        for (int v = 0; v < n; v++) {
+            int root = sets.find(v);
+            if (clusterIndex[root] == -1) {
+                clusterIndex[root] = clusters.size();
+                clusters.add(new ArrayList<>());
+            }
+            clusters.get(clusterIndex[root]).add(vertices.get(v));
+        }
+
+        return clusters;
+    }
+
+    /** Returns the source vertex of each edge in the CSR arrays */
+    private int[] getSources() {
+        int[] sources = new int[targets.length];
+        for (int u = 0; u < getSize(); u++) {
+            Arrays.fill(sources, offsets[u], offsets[u + 1], u);
+        }
+        return sources;
+    }
+
+    /** Returns the edges of a minimum spanning forest with a weight of at most maxWeight,
+     *  lightest first, found with Kruskal's algorithm over a sorted array of edge indexes */
+    private int[] getForestEdges(int[] sources, double maxWeight) {
+        int n = getSize();
+        int[] order = sortByWeight(weights);
+
+        // Add each edge that joins two trees until one tree spans each component
+        DisjointSets sets = new DisjointSets(n);
+        int[] forestEdges = new int[Math.max(n - 1, 0)];
+        int numForestEdges = 0;
+        for (int e : order) {
+            if (numForestEdges == n - 1 || weights[e] > maxWeight) {
+                break; // every vertex is in one tree, or the remaining edges are too heavy
+            }
+            if (sets.union(sources[e], targets[e])) {
+                forestEdges[numForestEdges++] = e;
+            }
+        }
+
+        return Arrays.copyOf(forestEdges, numForestEdges);
+    }
+
+    /** Returns the indexes of an array of weights from lightest to heaviest; equal weights keep
+     *  their order, so the result does not depend on the sort */
+    private static int[] sortByWeight(double[] weights) {
+        int[] order = new int[weights.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        int[] temp = new int[order.length];
+
+        // Bottom-up merge sort of the indexes
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int low = 0; low < order.length - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(low + 2 * width, order.length);
+                int i = low;
+                int j = mid;
+                int k = low;
+
+                while (i < mid && j < high) {
+                    temp[k++] = weights[order[j]] < weights[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < mid) {
+                    temp[k++] = order[i++];
+                }
+                while (j < high) {
+                    temp[k++] = order[j++];
+                }
+
+                System.arraycopy(temp, low, order, low, high - low);
+            }
+        }
+
+        return order;
+    }
+
     /** Returns tree of single source shortest paths from specified vertex */
     public ShortestPathTree getShortestPath(int sourceVertex) {
+        compact();
+
         // cost[v] stores the cost of the path from v to the source
         double[] cost = new double[getSize()];
         Arrays.fill(cost, Double.POSITIVE_INFINITY); // Initial cost set to infinity
@@ -261,27 +709,26 @@ public class WeightedGraph<V> {
 
         // T stores the vertices whose path found so far
         List<Integer> T = new ArrayList<>();
+        boolean[] inT = new boolean[getSize()]; // inT[v] is true if v is in T
 
-        // Expand T
-        while (T.size() < getSize()) {
-            // Find smallest cost v in V - T
-            int u = -1; // Vertex to be determined
-            double currentMinCost = Double.POSITIVE_INFINITY;
-            for (int i = 0; i < getSize(); i++) {
-                if (!T.contains(i) && cost[i] < currentMinCost) {
-                    currentMinCost = cost[i];
-                    u = i;
-                }
-            }
+        // Vertices with a finite cost that are not yet in T, ordered by cost
+        IndexedMinHeap heap = new IndexedMinHeap(cost);
+        heap.update(sourceVertex);
 
-            if (u == -1) break; else T.add(u); // Add a new vertex to T
+        // Expand T
+        while (!heap.isEmpty()) {
+            int u = heap.poll(); // Smallest cost u in V - T
+            T.add(u); // Add a new vertex to T
+            inT[u] = true;
 
             // Adjust cost[v] for v that is adjacent to u and v in V - T
-            for (Edge e : neighbors.get(u)) {
-                if (!T.contains(e.v)
-                        && cost[e.v] > cost[u] + e.weight) {
-                    cost[e.v] = cost[u] + e.weight;
-                    parent[e.v] = u;
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int v = targets[i];
+                if (!inT[v]
+                        && cost[v] > cost[u] + weights[i]) {
+                    cost[v] = cost[u] + weights[i];
+                    parent[v] = u;
+                    heap.update(v);
                 }
             }
         } // End of while
@@ -290,6 +737,407 @@ public class WeightedGraph<V> {
         return new ShortestPathTree(sourceVertex, parent, T, cost);
     }
 
+    /** Returns the shortest path from a source to a target, searching forward from the source
+     *  and backward from the target at the same time and stopping once the searches meet on a
+     *  shortest path. In the returned tree only the path vertices have parents and costs, and
+     *  the search order is the path from source to target. If there is no path, the cost of
+     *  the target is infinite. */
+    public ShortestPathTree getShortestPath(int sourceVertex, int targetVertex) {
+        compact();
+        compactReverse();
+        int n = getSize();
+
+        // Forward search from the source over edges, backward search from the target over
+        // reversed edges
+        double[] forwardCost = new double[n];
+        double[] backwardCost = new double[n];
+        Arrays.fill(forwardCost, Double.POSITIVE_INFINITY);
+        Arrays.fill(backwardCost, Double.POSITIVE_INFINITY);
+        int[] forwardParent = new int[n];
+        int[] backwardParent = new int[n]; // next vertex toward the target
+        boolean[] forwardDone = new boolean[n];
+        boolean[] backwardDone = new boolean[n];
+        IndexedMinHeap forwardHeap = new IndexedMinHeap(forwardCost);
+        IndexedMinHeap backwardHeap = new IndexedMinHeap(backwardCost);
+
+        forwardCost[sourceVertex] = 0;
+        forwardParent[sourceVertex] = -1;
+        forwardHeap.update(sourceVertex);
+        backwardCost[targetVertex] = 0;
+        backwardParent[targetVertex] = -1;
+        backwardHeap.update(targetVertex);
+
+        // Best path found so far: the forward path to meetFrom, edge (meetFrom, meetTo), and the
+        // backward path from meetTo
+        double best = Double.POSITIVE_INFINITY;
+        int meetFrom = -1;
+        int meetTo = -1;
+        double meetWeight = 0;
+        if (sourceVertex == targetVertex) {
+            best = 0;
+        }
+
+        // No shorter path exists once the two smallest costs add up to the best path found
+        while (!forwardHeap.isEmpty() && !backwardHeap.isEmpty()
+                && forwardCost[forwardHeap.peek()] + backwardCost[backwardHeap.peek()] < best) {
+            // Expand the search with the smaller frontier cost
+            boolean forward = forwardCost[forwardHeap.peek()] <= backwardCost[backwardHeap.peek()];
+            double[] cost = forward ? forwardCost : backwardCost;
+            double[] otherCost = forward ? backwardCost : forwardCost;
+            int[] parent = forward ? forwardParent : backwardParent;
+            boolean[] done = forward ? forwardDone : backwardDone;
+            IndexedMinHeap heap = forward ? forwardHeap : backwardHeap;
+            int[] rowOffsets = forward ? offsets : reverseOffsets;
+            int[] rowTargets = forward ? targets : reverseTargets;
+            double[] rowWeights = forward ? weights : reverseWeights;
+
+            int u = heap.poll();
+            done[u] = true;
+
+            for (int i = rowOffsets[u]; i < rowOffsets[u + 1]; i++) {
+                int v = rowTargets[i];
+                if (!done[v] && cost[v] > cost[u] + rowWeights[i]) {
+                    cost[v] = cost[u] + rowWeights[i];
+                    parent[v] = u;
+                    heap.update(v);
+                }
+
+                // The edge between u and v joins the two searches
+                if (cost[u] + rowWeights[i] + otherCost[v] < best) {
+                    best = cost[u] + rowWeights[i] + otherCost[v];
+                    meetFrom = forward ? u : v;
+                    meetTo = forward ? v : u;
+                    meetWeight = rowWeights[i];
+                }
+            }
+        }
+
+        // Only the path vertices get a parent and a cost
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        double[] cost = new double[n];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        cost[sourceVertex] = 0;
+        List<Integer> path = new ArrayList<>();
+
+        if (sourceVertex == targetVertex) {
+            path.add(sourceVertex);
+        } else if (meetFrom != -1) {
+            // Forward half, from meetFrom back to the source
+            for (int v = meetFrom; v != -1; v = forwardParent[v]) {
+                path.add(0, v);
+                parent[v] = forwardParent[v];
+                cost[v] = forwardCost[v];
+            }
+
+            // Backward half, from meetTo on to the target
+            double total = forwardCost[meetFrom] + meetWeight + backwardCost[meetTo];
+            int previous = meetFrom;
+            for (int v = meetTo; v != -1; v = backwardParent[v]) {
+                path.add(v);
+                parent[v] = previous;
+                cost[v] = total - backwardCost[v];
+                previous = v;
+            }
+        } else {
+            path.add(sourceVertex); // the target cannot be reached
+        }
+
+        return new ShortestPathTree(sourceVertex, parent, path, cost);
+    }
+
+    /** Creates the CSR form of the reversed edges if the CSR arrays have changed */
+    private void compactReverse() {
+        if (reversedOffsets == offsets) {
+            return;
+        }
+
+        int n = getSize();
+        int[] newOffsets = new int[n + 1];
+        for (int i = 0; i < targets.length; i++) {
+            newOffsets[targets[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            newOffsets[v + 1] += newOffsets[v];
+        }
+
+        int[] newTargets = new int[targets.length];
+        double[] newWeights = new double[targets.length];
+        int[] next = Arrays.copyOf(newOffsets, n);
+        for (int u = 0; u < n; u++) {
+            for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                int position = next[targets[i]]++;
+                newTargets[position] = u;
+                newWeights[position] = weights[i];
+            }
+        }
+
+        reverseOffsets = newOffsets;
+        reverseTargets = newTargets;
+        reverseWeights = newWeights;
+        reversedOffsets = offsets;
+    }
+
+    /** Disjoint sets of vertices (union-find), with path halving and union by size */
+    private static class DisjointSets {
+        private final int[] parent; // parent of each vertex, or itself if it is a root
+        private final int[] size; // number of vertices in the set of each root
+
+        public DisjointSets(int n) {
+            parent = new int[n];
+            size = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        /** Returns the root of the set containing a vertex */
+        public int find(int v) {
+            while (parent[v] != v) {
+                parent[v] = parent[parent[v]]; // point to grandparent to shorten the path
+                v = parent[v];
+            }
+            return v;
+        }
+
+        /** Joins the sets of two vertices; returns false if they were already in the same set */
+        public boolean union(int u, int v) {
+            int rootU = find(u);
+            int rootV = find(v);
+            if (rootU == rootV) {
+                return false;
+            }
+
+            // Attach the smaller tree under the larger one
+            if (size[rootU] < size[rootV]) {
+                int temp = rootU;
+                rootU = rootV;
+                rootV = temp;
+            }
+            parent[rootV] = rootU;
+            size[rootU] += size[rootV];
+            return true;
+        }
+    }
+
+    /** LevelTask class for scanning chunks of one breadth-first search level in parallel */
+    private class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] order;
+        private final int levelStart;
+        private final int levelEnd;
+        private final boolean[] isVisited; // only read while the level is scanned
+        private final int[][] found; // found[chunk] holds (u, w) pairs for each edge to an unvisited w
+        private final int start;
+        private final int end;
+
+        public LevelTask(int[] order, int levelStart, int levelEnd, boolean[] isVisited,
+                         int[][] found, int start, int end) {
+            this.order = order;
+            this.levelStart = levelStart;
+            this.levelEnd = levelEnd;
+            this.isVisited = isVisited;
+            this.found = found;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                scanChunk(start);
+            } else if (end > start) {
+                int middle = (start + end) / 2;
+                invokeAll(new LevelTask(order, levelStart, levelEnd, isVisited, found, start, middle),
+                        new LevelTask(order, levelStart, levelEnd, isVisited, found, middle, end));
+            }
+        }
+
+        /** Lists the edges from one chunk of the level to unvisited vertices, in bfs order */
+        private void scanChunk(int chunk) {
+            int from = levelStart + chunk * BFS_CHUNK_SIZE;
+            int to = Math.min(from + BFS_CHUNK_SIZE, levelEnd);
+
+            int[] pairs = new int[16];
+            int size = 0;
+            for (int n = from; n < to; n++) {
+                int u = order[n];
+                for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                    int w = targets[i];
+                    if (!isVisited[w]) {
+                        if (size + 2 > pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        }
+                        pairs[size++] = u;
+                        pairs[size++] = w;
+                    }
+                }
+            }
+
+            found[chunk] = Arrays.copyOf(pairs, size);
+        }
+    }
+
+    /** Binary min-heap of vertex indexes ordered by cost, then by index, that supports
+     *  lowering the cost of a vertex already in the heap */
+    private static class IndexedMinHeap {
+        private final double[] cost; // cost of each vertex, shared with the algorithm
+        private final int[] heap; // vertex indexes in heap order
+        private final int[] position; // position of each vertex in heap, or -1 if absent
+        private int size = 0;
+
+        public IndexedMinHeap(double[] cost) {
+            this.cost = cost;
+            this.heap = new int[cost.length];
+            this.position = new int[cost.length];
+            Arrays.fill(position, -1);
+        }
+
+        /** Returns true if the heap is empty */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** Adds a vertex, or moves it up after its cost has been lowered */
+        public void update(int v) {
+            if (position[v] == -1) {
+                heap[size] = v;
+                position[v] = size;
+                size++;
+            }
+            siftUp(position[v]);
+        }
+
+        /** Returns the vertex with the smallest cost without removing it */
+        public int peek() {
+            return heap[0];
+        }
+
+        /** Removes and returns the vertex with the smallest cost */
+        public int poll() {
+            int min = heap[0];
+            position[min] = -1;
+            size--;
+
+            if (size > 0) {
+                heap[0] = heap[size];
+                position[heap[0]] = 0;
+                siftDown(0);
+            }
+
+            return min;
+        }
+
+        /** Returns true if vertex a comes before vertex b; ties go to the smaller index, like
+         *  a linear scan for the smallest cost */
+        private boolean isLess(int a, int b) {
+            return cost[a] < cost[b] || (cost[a] == cost[b] && a < b);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!isLess(heap[i], heap[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && isLess(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!isLess(heap[child], heap[i])) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int temp = heap[i];
+            heap[i] = heap[j];
+            heap[j] = temp;
+            position[heap[i]] = i;
+            position[heap[j]] = j;
+        }
+    }
+
+    /** Builds a frozen graph directly in CSR form, without creating an Edge object per edge */
+    public static class Builder<V> {
+        private final List<V> vertices = new ArrayList<>();
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private double[] weights = new double[16];
+        private int numEdges = 0;
+
+        /** Adds a vertex and returns its index */
+        public int addVertex(V vertex) {
+            vertices.add(vertex);
+            return vertices.size() - 1;
+        }
+
+        /** Adds a directed edge between the vertices at two indexes */
+        public Builder<V> addEdge(int u, int v, double weight) {
+            if (u < 0 || u > vertices.size() - 1)
+                throw new IllegalArgumentException("No such index: " + u);
+
+            if (v < 0 || v > vertices.size() - 1)
+                throw new IllegalArgumentException("No such index: " + v);
+
+            if (numEdges == sources.length) {
+                int capacity = sources.length * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+
+            sources[numEdges] = u;
+            targets[numEdges] = v;
+            weights[numEdges] = weight;
+            numEdges++;
+            return this;
+        }
+
+        /** Adds edges in both directions between the vertices at two indexes */
+        public Builder<V> addUndirectedEdge(int u, int v, double weight) {
+            addEdge(u, v, weight);
+            return addEdge(v, u, weight);
+        }
+
+        /** Returns a frozen graph of the added vertices and edges */
+        public WeightedGraph<V> build() {
+            int numVertices = vertices.size();
+
+            // Count the edges of each vertex, then place edges row by row (counting sort)
+            int[] offsets = new int[numVertices + 1];
+            for (int i = 0; i < numEdges; i++) {
+                offsets[sources[i] + 1]++;
+            }
+            for (int u = 0; u < numVertices; u++) {
+                offsets[u + 1] += offsets[u];
+            }
+
+            int[] next = Arrays.copyOf(offsets, numVertices);
+            int[] csrTargets = new int[numEdges];
+            double[] csrWeights = new double[numEdges];
+            for (int i = 0; i < numEdges; i++) {
+                int index = next[sources[i]]++;
+                csrTargets[index] = targets[i];
+                csrWeights[index] = weights[i];
+            }
+
+            sortRows(offsets, csrTargets, csrWeights, numVertices);
+            return new WeightedGraph<>(new ArrayList<>(vertices), offsets, csrTargets, csrWeights);
+        }
+    }
+
     public static class Edge implements Comparable<Edge> {
         public int u;
         public int v;